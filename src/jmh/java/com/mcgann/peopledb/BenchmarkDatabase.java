@@ -0,0 +1,41 @@
+package com.mcgann.peopledb;
+
+import com.mcgann.peopledb.schema.SchemaMigrator;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A private in-memory H2 database per benchmark trial, migrated to the latest schema.
+ */
+public final class BenchmarkDatabase implements AutoCloseable {
+    private static final AtomicInteger DATABASE_COUNT = new AtomicInteger();
+
+    private final String url;
+    private final Connection keepAlive;
+
+    public BenchmarkDatabase() throws SQLException {
+        this.url = "jdbc:h2:mem:benchmark" + DATABASE_COUNT.incrementAndGet() + ";DB_CLOSE_DELAY=-1";
+        this.keepAlive = DriverManager.getConnection(url);
+        new SchemaMigrator(keepAlive).migrate();
+    }
+
+    public String url() {
+        return url;
+    }
+
+    public Connection connect() throws SQLException {
+        return DriverManager.getConnection(url);
+    }
+
+    @Override
+    public void close() throws SQLException {
+        try (Statement stmt = keepAlive.createStatement()) {
+            stmt.execute("SHUTDOWN");
+        }
+        keepAlive.close();
+    }
+}
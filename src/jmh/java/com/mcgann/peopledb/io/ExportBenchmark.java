@@ -0,0 +1,94 @@
+package com.mcgann.peopledb.io;
+
+import com.mcgann.peopledb.BenchmarkDatabase;
+import com.mcgann.peopledb.model.Address;
+import com.mcgann.peopledb.model.Person;
+import com.mcgann.peopledb.model.Region;
+import com.mcgann.peopledb.repository.PeopleRepository;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * A full export written by the exporter, against loading every person with findAll and writing their toString.
+ * Run with the gc profiler to compare allocation per export.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ExportBenchmark {
+    @Param({"100000"})
+    public int rows;
+
+    private BenchmarkDatabase database;
+    private PeopleRepository repository;
+    private Path file;
+
+    @Setup
+    public void setUp() throws SQLException, IOException {
+        database = new BenchmarkDatabase();
+        repository = new PeopleRepository(database.connect());
+        List<Address> addresses = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            addresses.add(new Address(null, i + " Main St", null, "City" + i % 100, "WA", "90210", "United States",
+                    null, Region.WEST));
+        }
+        List<Person> batch = new ArrayList<>(10_000);
+        for (int i = 0; i < rows; i++) {
+            Person person = new Person("person" + i, "name, " + i, ZonedDateTime.now().minusYears(i % 80));
+            person.setSalary(BigDecimal.valueOf(20_000 + i % 50_000, 2));
+            person.setEmail("person" + i + "@example.com");
+            person.setHomeAddress(addresses.get(i % addresses.size()));
+            batch.add(person);
+            if (batch.size() == 10_000 || i == rows - 1) {
+                repository.saveAll(batch);
+                batch.clear();
+            }
+        }
+        file = Files.createTempFile("people", ".export");
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException, IOException {
+        repository.close();
+        database.close();
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public ExportStats exportCsv() {
+        return new PeopleExporter(repository).export(file);
+    }
+
+    @Benchmark
+    public ExportStats exportJsonLinesGzip() {
+        return new PeopleExporter(repository, ExportConfig.defaults().withFormat(ExportFormat.JSON_LINES)
+                .withGzip(true)).export(file);
+    }
+
+    @Benchmark
+    public long loadedToString() throws IOException {
+        try (Stream<Person> people = repository.findAll();
+             var out = Files.newBufferedWriter(file)) {
+            long written = 0;
+            for (Person person : (Iterable<Person>) people::iterator) {
+                out.write(person.toString());
+                out.newLine();
+                written++;
+            }
+            return written;
+        }
+    }
+}
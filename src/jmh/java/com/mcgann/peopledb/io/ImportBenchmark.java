@@ -0,0 +1,70 @@
+package com.mcgann.peopledb.io;
+
+import com.mcgann.peopledb.BenchmarkDatabase;
+import com.mcgann.peopledb.repository.PeopleRepository;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Imports a generated CSV file into an empty database, with one parser thread against the default pool.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ImportBenchmark {
+    @Param({"100000"})
+    public int rows;
+
+    @Param({"1", "0"})
+    public int parserThreads;
+
+    private Path file;
+    private ImportConfig config;
+    private BenchmarkDatabase database;
+    private PeopleRepository repository;
+
+    @Setup
+    public void writeFile() throws IOException {
+        file = Files.createTempFile("people", ".csv");
+        try (BufferedWriter out = Files.newBufferedWriter(file)) {
+            out.write("FIRST_NAME,LAST_NAME,DOB,SALARY,EMAIL,HOME_STREET_ADDRESS,HOME_CITY,HOME_REGION\n");
+            for (int i = 0; i < rows; i++) {
+                out.write("person" + i + ",\"name, " + i + "\",19" + (10 + i % 90) + "-01-01," + (20_000 + i % 50_000) +
+                        ",person" + i + "@example.com," + (i % 1000) + " Main St,City" + (i % 100) + ",WEST\n");
+            }
+        }
+        config = parserThreads == 0 ? ImportConfig.defaults()
+                : ImportConfig.defaults().withParserThreads(parserThreads);
+    }
+
+    @Setup(Level.Invocation)
+    public void setUp() throws SQLException {
+        database = new BenchmarkDatabase();
+        repository = new PeopleRepository(database.connect());
+    }
+
+    @TearDown(Level.Invocation)
+    public void tearDown() throws SQLException {
+        repository.close();
+        database.close();
+    }
+
+    @TearDown
+    public void deleteFile() throws IOException {
+        Files.delete(file);
+    }
+
+    @Benchmark
+    public ImportStats importCsv() {
+        return new CsvImporter(repository, config).importCsv(file);
+    }
+}
@@ -0,0 +1,70 @@
+package com.mcgann.peopledb.repository;
+
+import com.mcgann.peopledb.BenchmarkDatabase;
+import com.mcgann.peopledb.model.Person;
+import com.mcgann.peopledb.model.SalaryStats;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * A payroll total computed by loading every person and summing in Java, against the same total pushed down to H2.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AggregateBenchmark {
+    @Param({"100000"})
+    public int rows;
+
+    private BenchmarkDatabase database;
+    private PeopleRepository repository;
+
+    @Setup
+    public void setUp() throws SQLException {
+        database = new BenchmarkDatabase();
+        repository = new PeopleRepository(database.connect());
+        List<Person> batch = new ArrayList<>(10_000);
+        for (int i = 0; i < rows; i++) {
+            Person person = new Person("person" + i, "name" + i, ZonedDateTime.now().minusYears(i % 80));
+            person.setSalary(BigDecimal.valueOf(20_000 + i % 50_000));
+            batch.add(person);
+            if (batch.size() == 10_000 || i == rows - 1) {
+                repository.saveAll(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        repository.close();
+        database.close();
+    }
+
+    @Benchmark
+    public BigDecimal salaryTotalLoaded() {
+        try (Stream<Person> people = repository.findAll()) {
+            return people.map(Person::getSalary).reduce(BigDecimal.ZERO, BigDecimal::add);
+        }
+    }
+
+    @Benchmark
+    public SalaryStats salaryStats() {
+        return repository.salaryStats();
+    }
+
+    @Benchmark
+    public Object countByBirthDecade() {
+        return repository.countByBirthDecade();
+    }
+}
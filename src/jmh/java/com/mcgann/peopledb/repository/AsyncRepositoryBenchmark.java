@@ -0,0 +1,93 @@
+package com.mcgann.peopledb.repository;
+
+import com.mcgann.peopledb.BenchmarkDatabase;
+import com.mcgann.peopledb.connection.ConnectionPool;
+import com.mcgann.peopledb.connection.PoolConfig;
+import com.mcgann.peopledb.model.Person;
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.SQLException;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * 1k concurrent findById callers per invocation: one platform thread per caller on the blocking API, against
+ * one CompletableFuture per caller on AsyncPeopleRepository's virtual threads.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AsyncRepositoryBenchmark {
+    // A constant, not a @Param, because @OperationsPerInvocation must match it.
+    private static final int CALLERS = 1000;
+
+    @Param({"8"})
+    public int poolSize;
+
+    private BenchmarkDatabase database;
+    private ConnectionPool pool;
+    private PeopleRepository repository;
+    private AsyncPeopleRepository asyncRepository;
+    private ExecutorService platformThreads;
+    private long[] ids;
+
+    @Setup
+    public void setUp() throws SQLException {
+        database = new BenchmarkDatabase();
+        pool = new ConnectionPool(database::connect, PoolConfig.defaults().withMaximumSize(poolSize));
+        repository = new PeopleRepository(pool);
+        asyncRepository = new AsyncPeopleRepository(repository, poolSize);
+        platformThreads = Executors.newFixedThreadPool(CALLERS);
+        ids = repository.saveAll(IntStream.range(0, CALLERS)
+                        .mapToObj(i -> new Person("test" + i, "123", ZonedDateTime.now()))
+                        .toList())
+                .stream().mapToLong(Person::getId).toArray();
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        asyncRepository.close();
+        platformThreads.shutdownNow();
+        pool.close();
+        database.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CALLERS)
+    public int blockingFindById() throws ExecutionException, InterruptedException {
+        List<Future<Boolean>> lookups = new ArrayList<>(CALLERS);
+        for (long id : ids) {
+            lookups.add(platformThreads.submit(() -> repository.findById(id).isPresent()));
+        }
+        int found = 0;
+        for (Future<Boolean> lookup : lookups) {
+            if (lookup.get()) found++;
+        }
+        return found;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CALLERS)
+    public int asyncFindById() {
+        List<CompletableFuture<Boolean>> lookups = new ArrayList<>(CALLERS);
+        for (long id : ids) {
+            lookups.add(asyncRepository.findById(id).thenApply(p -> p.isPresent()));
+        }
+        int found = 0;
+        for (CompletableFuture<Boolean> lookup : lookups) {
+            if (lookup.join()) found++;
+        }
+        return found;
+    }
+}
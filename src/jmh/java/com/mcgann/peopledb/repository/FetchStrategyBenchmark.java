@@ -0,0 +1,76 @@
+package com.mcgann.peopledb.repository;
+
+import com.mcgann.peopledb.BenchmarkDatabase;
+import com.mcgann.peopledb.model.Address;
+import com.mcgann.peopledb.model.Person;
+import com.mcgann.peopledb.model.Region;
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.SQLException;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * findById and findByIds on people with both addresses and familySize children, fetched in one joined query
+ * against a second query for the children.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FetchStrategyBenchmark {
+
+    @Param({"0", "2", "5", "50"})
+    public int familySize;
+
+    @Param({"JOINED", "SEPARATE_CHILDREN"})
+    public FetchStrategy strategy;
+
+    private static final int PARENTS = 100;
+
+    private BenchmarkDatabase database;
+    private PeopleRepository repository;
+    private List<Long> ids;
+    private int next;
+
+    @Setup
+    public void setUp() throws SQLException {
+        database = new BenchmarkDatabase();
+        repository = new PeopleRepository(database.connect());
+        ids = new ArrayList<>(PARENTS);
+        for (int i = 0; i < PARENTS; i++) {
+            Person parent = new Person("parent" + i, "Smith", ZonedDateTime.now());
+            parent.setHomeAddress(new Address(null, i + " Birch Street", "Apt 1A", "Leeds", "WA", "90210",
+                    "United States", "Fulton County", Region.WEST));
+            parent.setBusinessAddress(new Address(null, i + " Oak Street", "Suite 2", "Leeds", "WA", "90210",
+                    "United States", "Fulton County", Region.WEST));
+            for (int c = 0; c < familySize; c++) {
+                parent.addChild(new Person("child" + c, "Smith", ZonedDateTime.now()));
+            }
+            ids.add(repository.save(parent).getId());
+        }
+        repository.setFetchStrategy(strategy);
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        repository.close();
+        database.close();
+    }
+
+    @Benchmark
+    public Person findById() {
+        next = (next + 1) % PARENTS;
+        return repository.findById(ids.get(next)).orElseThrow();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PARENTS)
+    public int findByIds() {
+        return repository.findByIds(ids).size();
+    }
+}
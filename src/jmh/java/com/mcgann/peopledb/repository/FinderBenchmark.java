@@ -0,0 +1,106 @@
+package com.mcgann.peopledb.repository;
+
+import com.mcgann.peopledb.BenchmarkDatabase;
+import com.mcgann.peopledb.model.Address;
+import com.mcgann.peopledb.model.Person;
+import com.mcgann.peopledb.model.Region;
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * The PeopleRepository finders over a large table, with their indexes or with them dropped. Each of the cities
+ * holds rows / CITIES people (10 at 1M rows), and each last name prefix matches about a dozen.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FinderBenchmark {
+    private static final int CITIES = 100_000;
+
+    @Param({"1000000"})
+    public int rows;
+
+    @Param({"true", "false"})
+    public boolean indexed;
+
+    private BenchmarkDatabase database;
+    private PeopleRepository repository;
+
+    @Setup
+    public void setUp() throws SQLException {
+        database = new BenchmarkDatabase();
+        Connection connection = database.connect();
+        if (!indexed) {
+            try (Statement stmt = connection.createStatement()) {
+                stmt.execute("DROP INDEX PEOPLE_EMAIL_IX");
+                stmt.execute("DROP INDEX PEOPLE_LAST_NAME_IX");
+                stmt.execute("DROP INDEX ADDRESSES_REGION_CITY_IX");
+            }
+        }
+        repository = new PeopleRepository(connection);
+        Region[] regions = Region.values();
+        List<Address> addresses = new ArrayList<>(CITIES);
+        for (int i = 0; i < CITIES; i++) {
+            addresses.add(new Address(null, i + " Birch Street", null, "city" + i, "WA", "90210", "United States",
+                    "Fulton County", regions[i % regions.length]));
+        }
+        repository.getAddressRepository().saveAll(addresses);
+        List<Person> batch = new ArrayList<>(10_000);
+        for (int i = 0; i < rows; i++) {
+            Person person = new Person("person" + i, "name" + i, ZonedDateTime.now());
+            person.setEmail("person" + i + "@example.com");
+            person.setHomeAddress(addresses.get(i % CITIES));
+            batch.add(person);
+            if (batch.size() == 10_000 || i == rows - 1) {
+                repository.saveAll(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        repository.close();
+        database.close();
+    }
+
+    @Benchmark
+    public long findByEmail() {
+        try (Stream<Person> people = repository.findByEmail("person" + randomRow() + "@example.com")) {
+            return people.count();
+        }
+    }
+
+    @Benchmark
+    public long findByLastNameStartingWith() {
+        // "name" + a 5 digit number matches it and its 10 six-digit extensions.
+        try (Stream<Person> people = repository.findByLastNameStartingWith("name" + (10_000 + randomRow() % 90_000))) {
+            return people.count();
+        }
+    }
+
+    @Benchmark
+    public long findByHomeCity() {
+        int city = ThreadLocalRandom.current().nextInt(CITIES);
+        try (Stream<Person> people = repository.findByHomeCity(Region.values()[city % Region.values().length],
+                "city" + city)) {
+            return people.count();
+        }
+    }
+
+    private int randomRow() {
+        return ThreadLocalRandom.current().nextInt(rows);
+    }
+}
@@ -0,0 +1,148 @@
+package com.mcgann.peopledb.repository;
+
+import com.mcgann.peopledb.BenchmarkDatabase;
+import com.mcgann.peopledb.model.Address;
+import com.mcgann.peopledb.model.Person;
+import com.mcgann.peopledb.model.Region;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * The basic PeopleRepository operations against an in-memory database, as the baseline for changes to
+ * CRUDRepository. Run with the gc profiler (the jmh task's default) to see allocations per operation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PeopleRepositoryBenchmark {
+    private static final int DELETED_PER_INVOCATION = 10;
+
+    /**
+     * A database holding 1000 people, shared by the other states so they set up the rows the benchmarks use.
+     */
+    @State(Scope.Thread)
+    public static class Repository {
+        private BenchmarkDatabase database;
+        private PeopleRepository people;
+        private Person updated;
+        private boolean raise;
+
+        @Setup
+        public void setUp() throws SQLException {
+            database = new BenchmarkDatabase();
+            people = new PeopleRepository(database.connect());
+            people.saveAll(IntStream.range(0, 1000).mapToObj(i -> newPerson("existing" + i)).toList());
+            updated = people.save(newPerson("updated"));
+        }
+
+        @TearDown
+        public void tearDown() throws SQLException {
+            people.close();
+            database.close();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Family {
+        @Param({"0", "5", "20"})
+        public int familySize;
+
+        private long id;
+
+        @Setup
+        public void setUp(Repository repository) {
+            id = repository.people.save(newFamily(familySize)).getId();
+        }
+    }
+
+    /**
+     * People to delete, saved before every invocation so the deletes always find their rows.
+     */
+    @State(Scope.Thread)
+    public static class Doomed {
+        private List<Person> people;
+
+        @Setup(Level.Invocation)
+        public void setUp(Repository repository) {
+            people = repository.people.saveAll(IntStream.range(0, DELETED_PER_INVOCATION)
+                    .mapToObj(i -> newPerson("doomed" + i))
+                    .toList());
+        }
+    }
+
+    @Benchmark
+    public Person save(Repository repository) {
+        return repository.people.save(newPerson("saved"));
+    }
+
+    @Benchmark
+    public Person saveWithAddresses(Repository repository) {
+        Person person = newPerson("saved");
+        person.setHomeAddress(newAddress("123 Birch Street"));
+        person.setBusinessAddress(newAddress("1 Office Park"));
+        return repository.people.save(person);
+    }
+
+    @Benchmark
+    public Person saveWithChildren(Repository repository) {
+        return repository.people.save(newFamily(3));
+    }
+
+    @Benchmark
+    public Person findById(Repository repository, Family family) {
+        return repository.people.findById(family.id).orElseThrow();
+    }
+
+    @Benchmark
+    public long count(Repository repository) {
+        return repository.people.count();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(DELETED_PER_INVOCATION)
+    public void deleteSingly(Repository repository, Doomed doomed) {
+        doomed.people.forEach(repository.people::delete);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(DELETED_PER_INVOCATION)
+    public void deleteVarargs(Repository repository, Doomed doomed) {
+        repository.people.delete(doomed.people.toArray(Person[]::new));
+    }
+
+    @Benchmark
+    public void update(Repository repository) {
+        repository.raise = !repository.raise;
+        repository.updated.setSalary(new BigDecimal(repository.raise ? "1000.00" : "2000.00"));
+        repository.people.update(repository.updated);
+    }
+
+    private static Person newPerson(String firstName) {
+        Person person = new Person(firstName, "Smith", ZonedDateTime.now());
+        person.setEmail(firstName + "@example.com");
+        return person;
+    }
+
+    private static Person newFamily(int children) {
+        Person parent = newPerson("parent");
+        parent.setHomeAddress(newAddress("123 Birch Street"));
+        parent.setBusinessAddress(newAddress("1 Office Park"));
+        for (int i = 0; i < children; i++) {
+            parent.addChild(newPerson("child" + i));
+        }
+        return parent;
+    }
+
+    private static Address newAddress(String streetAddress) {
+        return new Address(null, streetAddress, null, "Leeds", "WA", "90210", "United States", "Fulton County",
+                Region.WEST);
+    }
+}
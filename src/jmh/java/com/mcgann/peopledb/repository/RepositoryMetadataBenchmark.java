@@ -0,0 +1,91 @@
+package com.mcgann.peopledb.repository;
+
+import com.mcgann.peopledb.annotation.Id;
+import com.mcgann.peopledb.annotation.SQL;
+import com.mcgann.peopledb.model.CrudOperation;
+import com.mcgann.peopledb.model.Person;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-call cost of the lookups CRUDRepository does on every operation: the reflective scans it used to run
+ * ("reflective*") against the cached {@link RepositoryMetadata} ("cached*").
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RepositoryMetadataBenchmark {
+
+    private Person person;
+    private long nextId;
+
+    @Setup
+    public void setUp() {
+        person = new Person("John", "Smith", ZonedDateTime.of(1980, 11, 15, 0, 0, 0, 0, ZoneId.of("-6")));
+        person.setId(1L);
+    }
+
+    @Benchmark
+    public String reflectiveSqlLookup() {
+        return Arrays.stream(PeopleRepository.class.getDeclaredMethods())
+                .filter(m -> m.isAnnotationPresent(SQL.class))
+                .map(m -> m.getAnnotation(SQL.class))
+                .filter(a -> a.operationType().equals(CrudOperation.FIND_BY_ID))
+                .map(SQL::value)
+                .findFirst().orElse("");
+    }
+
+    @Benchmark
+    public String cachedSqlLookup() {
+        return RepositoryMetadata.of(PeopleRepository.class).sql(CrudOperation.FIND_BY_ID);
+    }
+
+    @Benchmark
+    public Long reflectiveGetId() {
+        return Arrays.stream(person.getClass().getDeclaredFields())
+                .filter(f -> f.isAnnotationPresent(Id.class))
+                .map(f -> {
+                    f.setAccessible(true);
+                    try {
+                        return (Long) f.get(person);
+                    } catch (IllegalAccessException e) {
+                        throw new RuntimeException(e);
+                    }
+                })
+                .findFirst().orElseThrow();
+    }
+
+    @Benchmark
+    public Long cachedGetId() {
+        return RepositoryMetadata.of(PeopleRepository.class).getId(person);
+    }
+
+    @Benchmark
+    public Person reflectiveSetId() {
+        Long id = nextId++;
+        Arrays.stream(person.getClass().getDeclaredFields())
+                .filter(f -> f.isAnnotationPresent(Id.class))
+                .forEach(f -> {
+                    f.setAccessible(true);
+                    try {
+                        f.set(person, id);
+                    } catch (IllegalAccessException e) {
+                        throw new RuntimeException(e);
+                    }
+                });
+        return person;
+    }
+
+    @Benchmark
+    public Person cachedSetId() {
+        RepositoryMetadata.of(PeopleRepository.class).setId(person, nextId++);
+        return person;
+    }
+}
@@ -0,0 +1,120 @@
+package com.mcgann.peopledb.repository;
+
+import com.mcgann.peopledb.BenchmarkDatabase;
+import com.mcgann.peopledb.model.Address;
+import com.mcgann.peopledb.model.Person;
+import com.mcgann.peopledb.model.Region;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Maps every row of FIND_ALL_SQL, with both addresses, through the index-based row mappers against the previous
+ * lookup of each column by its concatenated label.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RowMapperBenchmark {
+
+    @Param({"1000"})
+    public int rows;
+
+    private static final PersonRowMapper PERSON = new PersonRowMapper("PERSON_");
+    private static final AddressRowMapper HOME = new AddressRowMapper("HOME_");
+    private static final AddressRowMapper BUSINESS = new AddressRowMapper("BUSINESS_");
+
+    private BenchmarkDatabase database;
+    private Connection connection;
+    private PreparedStatement findAll;
+
+    @Setup
+    public void setUp() throws SQLException {
+        database = new BenchmarkDatabase();
+        try (PeopleRepository repository = new PeopleRepository(database.connect())) {
+            repository.saveAll(IntStream.range(0, rows).mapToObj(i -> {
+                Person person = new Person("test" + i, "123", ZonedDateTime.now());
+                person.setSalary(BigDecimal.valueOf(i));
+                person.setHomeAddress(new Address(null, i + " Birch Street", "Apt 1A", "Leeds", "WA", "90210",
+                        "United States", "Fulton County", Region.WEST));
+                person.setBusinessAddress(new Address(null, i + " Oak Street", null, "Leeds", "WA", "90210",
+                        "United States", "Fulton County", Region.NORTHEAST));
+                return person;
+            }).toList());
+        }
+        connection = database.connect();
+        findAll = connection.prepareStatement(PeopleRepository.FIND_ALL_SQL);
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        findAll.close();
+        connection.close();
+        database.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(1000)
+    public void byIndex(Blackhole blackhole) throws SQLException {
+        try (ResultSet rs = findAll.executeQuery()) {
+            while (rs.next()) {
+                Person person = PERSON.map(rs);
+                person.setHomeAddress(HOME.map(rs));
+                person.setBusinessAddress(BUSINESS.map(rs));
+                blackhole.consume(person);
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(1000)
+    public void byLabel(Blackhole blackhole) throws SQLException {
+        try (ResultSet rs = findAll.executeQuery()) {
+            while (rs.next()) {
+                Person person = extractPerson(rs, "PERSON_");
+                person.setHomeAddress(extractAddress(rs, "HOME_"));
+                person.setBusinessAddress(extractAddress(rs, "BUSINESS_"));
+                blackhole.consume(person);
+            }
+        }
+    }
+
+    private static Person extractPerson(ResultSet rs, String aliasPrefix) throws SQLException {
+        long personId = rs.getLong(aliasPrefix + "ID");
+        String firstName = rs.getString(aliasPrefix + "FIRST_NAME");
+        String lastName = rs.getString(aliasPrefix + "LAST_NAME");
+        ZonedDateTime dob = ZonedDateTime.of(rs.getTimestamp(aliasPrefix + "DOB").toLocalDateTime(),
+                ZoneId.of("+0"));
+        BigDecimal salary = rs.getBigDecimal(aliasPrefix + "SALARY");
+        Person foundPerson = new Person(firstName, lastName, dob);
+        foundPerson.setId(personId);
+        foundPerson.setSalary(salary);
+        return foundPerson;
+    }
+
+    private static Address extractAddress(ResultSet rs, String addressType) throws SQLException {
+        long addressId = rs.getLong(addressType + "ID");
+        if (rs.getObject(addressType + "ID") == null) { return null; }
+        String streetAddress = rs.getString(addressType + "STREET_ADDRESS");
+        String address2 = rs.getString(addressType + "ADDRESS2");
+        String city = rs.getString(addressType + "CITY");
+        String state = rs.getString(addressType + "STATE");
+        String postcode = rs.getString(addressType + "POSTCODE");
+        String county = rs.getString(addressType + "COUNTY");
+        Region region = Region.valueOf(rs.getString(addressType + "REGION").toUpperCase());
+        String country = rs.getString(addressType + "COUNTRY");
+        return new Address(addressId, streetAddress, address2, city, state, postcode, country, county, region);
+    }
+}
@@ -0,0 +1,112 @@
+package com.mcgann.peopledb.repository;
+
+import com.mcgann.peopledb.BenchmarkDatabase;
+import com.mcgann.peopledb.model.Address;
+import com.mcgann.peopledb.model.Person;
+import com.mcgann.peopledb.model.Region;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * findById against the database, a PeopleSnapshot of it and the snapshot mapped from a file, over families of a
+ * parent and two children sharing a thousand addresses. The load benchmarks compare a cold start from the database
+ * with one from the file.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SnapshotBenchmark {
+    private static final int ADDRESSES = 1000;
+
+    @Param({"100000"})
+    public int families;
+
+    private BenchmarkDatabase database;
+    private PeopleRepository repository;
+    private PeopleSnapshot snapshot;
+    private Path file;
+    private MappedSnapshot mapped;
+    private long[] parentIds;
+
+    @Setup
+    public void setUp() throws SQLException, IOException {
+        database = new BenchmarkDatabase();
+        repository = new PeopleRepository(database.connect());
+        Region[] regions = Region.values();
+        List<Address> addresses = new ArrayList<>(ADDRESSES);
+        for (int i = 0; i < ADDRESSES; i++) {
+            addresses.add(new Address(null, i + " Birch Street", null, "city" + i % 100, "WA", "90210",
+                    "United States", "Fulton County", regions[i % regions.length]));
+        }
+        repository.getAddressRepository().saveAll(addresses);
+        parentIds = new long[families];
+        List<Person> batch = new ArrayList<>(1000);
+        for (int i = 0; i < families; i++) {
+            Person parent = new Person("parent" + i % 500, "name" + i % 2000, ZonedDateTime.now());
+            parent.setSalary(BigDecimal.valueOf(20_000 + i % 50_000, 2));
+            parent.setEmail("parent" + i + "@example.com");
+            parent.setHomeAddress(addresses.get(i % ADDRESSES));
+            parent.addChild(new Person("child" + i % 500, "name" + i % 2000, ZonedDateTime.now()));
+            parent.addChild(new Person("child" + (i + 1) % 500, "name" + i % 2000, ZonedDateTime.now()));
+            batch.add(parent);
+            if (batch.size() == 1000 || i == families - 1) {
+                repository.saveAll(batch);
+                for (int j = 0; j < batch.size(); j++) parentIds[i - batch.size() + 1 + j] = batch.get(j).getId();
+                batch.clear();
+            }
+        }
+        snapshot = repository.snapshot();
+        file = Files.createTempFile("people", ".snapshot");
+        SnapshotFile.write(snapshot, file);
+        mapped = SnapshotFile.open(file);
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException, IOException {
+        repository.close();
+        database.close();
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public Person repositoryFindById() {
+        return repository.findById(randomParentId()).orElseThrow();
+    }
+
+    @Benchmark
+    public Person snapshotFindById() {
+        return snapshot.findById(randomParentId()).orElseThrow();
+    }
+
+    @Benchmark
+    public Person mappedFindById() {
+        return mapped.findById(randomParentId()).orElseThrow();
+    }
+
+    @Benchmark
+    public PeopleSnapshot loadSnapshot() {
+        return repository.snapshot();
+    }
+
+    @Benchmark
+    public MappedSnapshot openSnapshotFile() throws IOException {
+        return SnapshotFile.open(file);
+    }
+
+    private long randomParentId() {
+        return parentIds[ThreadLocalRandom.current().nextInt(families)];
+    }
+}
@@ -0,0 +1,13 @@
+package com.mcgann.peopledb.cache;
+
+/**
+ * A point-in-time snapshot of an {@link EntityCache}'s counters.
+ * @param evictions Entries dropped because the cache was full or they outlived their time to live.
+ */
+public record CacheStats(long hits, long misses, long evictions, int size) {
+
+    public double hitRate() {
+        long requests = hits + misses;
+        return requests == 0 ? 0.0 : (double) hits / requests;
+    }
+}
@@ -0,0 +1,150 @@
+package com.mcgann.peopledb.cache;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+
+/**
+ * A thread-safe, size- and time-bounded cache of entities by ID.
+ * When full, the least recently used entry is evicted; entries older than the time to live are evicted when read.
+ * The cache hands out the instances it holds; repositories give their callers copies of mutable entities, see
+ * {@code CRUDRepository.copyCached}.
+ */
+public final class EntityCache<T> {
+    private final int maximumSize;
+    private final Duration timeToLive;
+    private final long timeToLiveNanos;
+    private final LongSupplier nanoClock;
+    private final LinkedHashMap<Long, Entry<T>> entries;
+    // IDs of the cached entities listing each key, kept in step with entries when indexBy is set.
+    private final Map<Long, Set<Long>> index = new HashMap<>();
+    private Function<? super T, ? extends Collection<Long>> indexKeys;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    private record Entry<T>(T value, long loadedAt) {}
+
+    public EntityCache(int maximumSize, Duration timeToLive) {
+        this(maximumSize, timeToLive, System::nanoTime);
+    }
+
+    EntityCache(int maximumSize, Duration timeToLive, LongSupplier nanoClock) {
+        if (maximumSize < 1) throw new IllegalArgumentException("Maximum cache size must be at least 1.");
+        if (timeToLive.isNegative() || timeToLive.isZero()) {
+            throw new IllegalArgumentException("Time to live must be positive.");
+        }
+        this.maximumSize = maximumSize;
+        this.timeToLive = timeToLive;
+        this.timeToLiveNanos = timeToLive.toNanos();
+        this.nanoClock = nanoClock;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Entry<T>> eldest) {
+                if (size() <= EntityCache.this.maximumSize) return false;
+                evictions++;
+                unindex(eldest.getKey(), eldest.getValue());
+                return true;
+            }
+        };
+    }
+
+    /**
+     * @return The cached entity, or null if it isn't cached or has expired.
+     */
+    public synchronized T get(long id) {
+        Entry<T> entry = entries.get(id);
+        if (entry != null && nanoClock.getAsLong() - entry.loadedAt() > timeToLiveNanos) {
+            unindex(id, entries.remove(id));
+            evictions++;
+            entry = null;
+        }
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.value();
+    }
+
+    public synchronized void put(long id, T entity) {
+        unindex(id, entries.put(id, new Entry<>(entity, nanoClock.getAsLong())));
+        index(id, entity);
+    }
+
+    public synchronized void invalidate(long id) {
+        unindex(id, entries.remove(id));
+    }
+
+    public synchronized void invalidateIf(Predicate<? super T> predicate) {
+        Iterator<Map.Entry<Long, Entry<T>>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Long, Entry<T>> entry = iterator.next();
+            if (predicate.test(entry.getValue().value())) {
+                iterator.remove();
+                unindex(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    public synchronized void invalidateAll() {
+        entries.clear();
+        index.clear();
+    }
+
+    /**
+     * Indexes cached entities by the keys they list, e.g. a parent by its children's IDs, so
+     * {@link #invalidateByKey} finds them without scanning the cache. Entities already cached are indexed now.
+     */
+    public synchronized void indexBy(Function<? super T, ? extends Collection<Long>> keys) {
+        indexKeys = keys;
+        index.clear();
+        entries.forEach((id, entry) -> index(id, entry.value()));
+    }
+
+    /**
+     * Invalidates the cached entities listing the key, in time proportional to their number, not the cache size.
+     */
+    public synchronized void invalidateByKey(long key) {
+        Set<Long> ids = index.remove(key);
+        if (ids == null) return;
+        for (Long id : ids) {
+            unindex(id, entries.remove(id));
+        }
+    }
+
+    public synchronized CacheStats stats() {
+        return new CacheStats(hits, misses, evictions, entries.size());
+    }
+
+    private void index(long id, T entity) {
+        if (indexKeys == null) return;
+        for (Long key : indexKeys.apply(entity)) {
+            index.computeIfAbsent(key, k -> new HashSet<>()).add(id);
+        }
+    }
+
+    private void unindex(long id, Entry<T> removed) {
+        if (removed == null || indexKeys == null) return;
+        for (Long key : indexKeys.apply(removed.value())) {
+            Set<Long> ids = index.get(key);
+            if (ids != null && ids.remove(id) && ids.isEmpty()) index.remove(key);
+        }
+    }
+
+    public int maximumSize() {
+        return maximumSize;
+    }
+
+    public Duration timeToLive() {
+        return timeToLive;
+    }
+}
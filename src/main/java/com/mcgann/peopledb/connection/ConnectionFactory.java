@@ -0,0 +1,13 @@
+package com.mcgann.peopledb.connection;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Opens the physical connections a {@link ConnectionPool} hands out, e.g. {@code () -> DriverManager.getConnection(url)}.
+ */
+@FunctionalInterface
+public interface ConnectionFactory {
+
+    Connection create() throws SQLException;
+}
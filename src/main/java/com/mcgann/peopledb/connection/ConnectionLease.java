@@ -0,0 +1,17 @@
+package com.mcgann.peopledb.connection;
+
+import java.sql.Connection;
+
+/**
+ * A connection borrowed from a {@link ConnectionProvider}, together with the statements cached on it.
+ * Close the lease, not the connection, to give it back.
+ */
+public interface ConnectionLease extends AutoCloseable {
+
+    Connection connection();
+
+    StatementCache statements();
+
+    @Override
+    void close();
+}
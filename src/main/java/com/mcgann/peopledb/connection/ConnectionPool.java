@@ -0,0 +1,268 @@
+package com.mcgann.peopledb.connection;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded pool of connections that repositories can share between threads.
+ * <p>
+ * Idle connections are lent out most recently used first, so their cached statements stay warm. A connection is
+ * checked with isValid when it has been idle for longer than the validation interval, and a background thread
+ * closes connections idle for longer than the idle timeout, down to the minimum idle count.
+ * <p>
+ * When a lease is released, uncommitted work is rolled back and auto-commit is restored to its original setting.
+ */
+public final class ConnectionPool implements ConnectionProvider, AutoCloseable {
+    private static final AtomicInteger POOL_COUNT = new AtomicInteger();
+
+    private final ConnectionFactory factory;
+    private final PoolConfig config;
+    private final Semaphore permits;
+    private final Deque<PooledConnection> idle = new ArrayDeque<>();
+    private final ThreadLocal<Lease> currentLease = new ThreadLocal<>();
+    private final ScheduledExecutorService evictor;
+    private volatile boolean closed;
+
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicLong borrows = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong evicted = new AtomicLong();
+    private final AtomicLong validationFailures = new AtomicLong();
+    private final AtomicLong waitNanos = new AtomicLong();
+
+    public ConnectionPool(ConnectionFactory factory) {
+        this(factory, PoolConfig.defaults());
+    }
+
+    public ConnectionPool(ConnectionFactory factory, PoolConfig config) {
+        this.factory = factory;
+        this.config = config;
+        this.permits = new Semaphore(config.maximumSize(), true);
+        this.evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "connection-pool-evictor-" + POOL_COUNT.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        long evictionPeriod = Math.max(config.idleTimeout().toMillis() / 2, 1);
+        evictor.scheduleWithFixedDelay(this::evictIdleConnections, evictionPeriod, evictionPeriod,
+                TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public ConnectionLease borrow() throws SQLException {
+        Lease lease = currentLease.get();
+        if (lease != null) {
+            if (lease.join()) return lease;
+            // Released from another thread, e.g. by closing a stream there, so the connection may be lent out again.
+            currentLease.remove();
+        }
+        if (closed) throw new SQLException("Connection pool is closed.");
+
+        long startedWaiting = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(config.borrowTimeout().toNanos(), TimeUnit.NANOSECONDS)) {
+                timeouts.incrementAndGet();
+                throw new SQLTransientConnectionException("Timed out after " + config.borrowTimeout() +
+                        " waiting for a connection; all " + config.maximumSize() + " are in use.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection.", e);
+        }
+        waitNanos.addAndGet(System.nanoTime() - startedWaiting);
+
+        PooledConnection pooled;
+        try {
+            pooled = takeValidConnection();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+        active.incrementAndGet();
+        borrows.incrementAndGet();
+        lease = new Lease(pooled);
+        pooled.statements.leaseBorrowed();
+        currentLease.set(lease);
+        return lease;
+    }
+
+    public PoolMetrics metrics() {
+        int idleCount;
+        synchronized (idle) {
+            idleCount = idle.size();
+        }
+        return new PoolMetrics(active.get(), idleCount, config.maximumSize(), borrows.get(), timeouts.get(),
+                created.get(), evicted.get(), validationFailures.get(), Duration.ofNanos(waitNanos.get()));
+    }
+
+    /**
+     * Closes the idle connections and stops the evictor. Connections still lent out are closed when released.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        evictor.shutdownNow();
+        List<PooledConnection> toClose;
+        synchronized (idle) {
+            toClose = new ArrayList<>(idle);
+            idle.clear();
+        }
+        toClose.forEach(PooledConnection::close);
+    }
+
+    private PooledConnection takeValidConnection() throws SQLException {
+        while (true) {
+            PooledConnection pooled;
+            synchronized (idle) {
+                pooled = idle.pollFirst();
+            }
+            if (pooled == null) {
+                created.incrementAndGet();
+                return new PooledConnection(factory.create(), config.statementCacheSize());
+            }
+            if (pooled.idleFor() <= config.validationInterval().toNanos() || pooled.isValid()) {
+                return pooled;
+            }
+            validationFailures.incrementAndGet();
+            pooled.close();
+        }
+    }
+
+    private void release(PooledConnection pooled) {
+        boolean reusable = pooled.reset();
+        active.decrementAndGet();
+        if (reusable && !closed) {
+            pooled.lastUsed = System.nanoTime();
+            synchronized (idle) {
+                idle.addFirst(pooled);
+            }
+        } else {
+            pooled.close();
+        }
+        permits.release();
+    }
+
+    private void evictIdleConnections() {
+        long idleTimeout = config.idleTimeout().toNanos();
+        List<PooledConnection> toClose = new ArrayList<>();
+        synchronized (idle) {
+            // The least recently used connections are at the back of the deque.
+            Iterator<PooledConnection> iterator = idle.descendingIterator();
+            while (iterator.hasNext() && idle.size() > config.minimumIdle()) {
+                PooledConnection pooled = iterator.next();
+                if (pooled.idleFor() > idleTimeout) {
+                    iterator.remove();
+                    toClose.add(pooled);
+                }
+            }
+        }
+        evicted.addAndGet(toClose.size());
+        toClose.forEach(PooledConnection::close);
+    }
+
+    private static final class PooledConnection {
+        private final Connection connection;
+        private final StatementCache statements;
+        private final boolean autoCommit;
+        private volatile long lastUsed = System.nanoTime();
+
+        private PooledConnection(Connection connection, int statementCacheSize) throws SQLException {
+            this.connection = connection;
+            this.statements = new StatementCache(connection, statementCacheSize);
+            this.autoCommit = connection.getAutoCommit();
+        }
+
+        private long idleFor() {
+            return System.nanoTime() - lastUsed;
+        }
+
+        private boolean isValid() {
+            try {
+                return connection.isValid(1);
+            } catch (SQLException e) {
+                return false;
+            }
+        }
+
+        /**
+         * @return Whether the connection can go back to the pool.
+         */
+        private boolean reset() {
+            try {
+                if (connection.isClosed()) return false;
+                if (!connection.getAutoCommit()) {
+                    connection.rollback();
+                    connection.setAutoCommit(autoCommit);
+                }
+                return true;
+            } catch (SQLException e) {
+                return false;
+            }
+        }
+
+        private void close() {
+            statements.close();
+            try {
+                connection.close();
+            } catch (SQLException ignored) {
+            }
+        }
+    }
+
+    /**
+     * Nested borrows on the owning thread join the lease. It may be closed from another thread, e.g. with a stream
+     * handed over to it, so its state is guarded by its monitor, and a released lease is never joined again.
+     */
+    private final class Lease implements ConnectionLease {
+        private final PooledConnection pooled;
+        private int depth = 1;
+        private boolean released;
+
+        private Lease(PooledConnection pooled) {
+            this.pooled = pooled;
+        }
+
+        @Override
+        public Connection connection() {
+            return pooled.connection;
+        }
+
+        @Override
+        public StatementCache statements() {
+            return pooled.statements;
+        }
+
+        private synchronized boolean join() {
+            if (released) return false;
+            depth++;
+            pooled.statements.leaseBorrowed();
+            return true;
+        }
+
+        @Override
+        public void close() {
+            synchronized (this) {
+                if (released) return;
+                pooled.statements.leaseReturned();
+                if (--depth > 0) return;
+                released = true;
+            }
+            if (currentLease.get() == this) currentLease.remove();
+            release(pooled);
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.mcgann.peopledb.connection;
+
+import java.sql.SQLException;
+
+/**
+ * Where repositories get their connection from. Each repository operation borrows a lease and closes it when done.
+ * Borrowing again on a thread that already holds a lease joins that lease, so a cascading save, or any unit of work
+ * wrapped in an outer lease, runs on one connection.
+ */
+public interface ConnectionProvider {
+
+    ConnectionLease borrow() throws SQLException;
+}
@@ -0,0 +1,58 @@
+package com.mcgann.peopledb.connection;
+
+import java.time.Duration;
+
+/**
+ * Sizing and housekeeping settings for a {@link ConnectionPool}.
+ * @param minimumIdle Idle connections the evictor leaves open.
+ * @param maximumSize Upper bound on open connections; borrowers wait when all of them are lent out.
+ * @param borrowTimeout How long a borrower waits for a connection before failing.
+ * @param idleTimeout How long a connection may sit idle before it is closed.
+ * @param validationInterval Connections idle for longer than this are checked with isValid before being lent out.
+ * @param statementCacheSize Prepared statements kept open per connection.
+ */
+public record PoolConfig(int minimumIdle, int maximumSize, Duration borrowTimeout, Duration idleTimeout,
+                         Duration validationInterval, int statementCacheSize) {
+
+    public PoolConfig {
+        if (maximumSize < 1) throw new IllegalArgumentException("Maximum pool size must be at least 1.");
+        if (minimumIdle < 0 || minimumIdle > maximumSize) {
+            throw new IllegalArgumentException("Minimum idle must be between 0 and the maximum pool size.");
+        }
+    }
+
+    public static PoolConfig defaults() {
+        return new PoolConfig(1, Runtime.getRuntime().availableProcessors() * 2, Duration.ofSeconds(30),
+                Duration.ofMinutes(10), Duration.ofMillis(500), StatementCache.DEFAULT_CAPACITY);
+    }
+
+    public PoolConfig withMaximumSize(int maximumSize) {
+        return new PoolConfig(Math.min(minimumIdle, maximumSize), maximumSize, borrowTimeout, idleTimeout,
+                validationInterval, statementCacheSize);
+    }
+
+    public PoolConfig withMinimumIdle(int minimumIdle) {
+        return new PoolConfig(minimumIdle, maximumSize, borrowTimeout, idleTimeout, validationInterval,
+                statementCacheSize);
+    }
+
+    public PoolConfig withBorrowTimeout(Duration borrowTimeout) {
+        return new PoolConfig(minimumIdle, maximumSize, borrowTimeout, idleTimeout, validationInterval,
+                statementCacheSize);
+    }
+
+    public PoolConfig withIdleTimeout(Duration idleTimeout) {
+        return new PoolConfig(minimumIdle, maximumSize, borrowTimeout, idleTimeout, validationInterval,
+                statementCacheSize);
+    }
+
+    public PoolConfig withValidationInterval(Duration validationInterval) {
+        return new PoolConfig(minimumIdle, maximumSize, borrowTimeout, idleTimeout, validationInterval,
+                statementCacheSize);
+    }
+
+    public PoolConfig withStatementCacheSize(int statementCacheSize) {
+        return new PoolConfig(minimumIdle, maximumSize, borrowTimeout, idleTimeout, validationInterval,
+                statementCacheSize);
+    }
+}
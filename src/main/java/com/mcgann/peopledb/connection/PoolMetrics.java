@@ -0,0 +1,23 @@
+package com.mcgann.peopledb.connection;
+
+import java.time.Duration;
+
+/**
+ * A point-in-time snapshot of a {@link ConnectionPool}.
+ * @param active Connections currently lent out.
+ * @param idle Connections open and waiting to be borrowed.
+ * @param borrows Leases handed out, not counting borrows that joined a lease the thread already held.
+ * @param evicted Connections closed for sitting idle past the idle timeout.
+ * @param totalWait Time borrowers have spent waiting for a connection, in total.
+ */
+public record PoolMetrics(int active, int idle, int maximumSize, long borrows, long timeouts, long created,
+                          long evicted, long validationFailures, Duration totalWait) {
+
+    public int total() {
+        return active + idle;
+    }
+
+    public Duration averageWait() {
+        return borrows == 0 ? Duration.ZERO : totalWait.dividedBy(borrows);
+    }
+}
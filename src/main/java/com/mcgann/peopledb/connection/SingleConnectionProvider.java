@@ -0,0 +1,51 @@
+package com.mcgann.peopledb.connection;
+
+import java.sql.Connection;
+
+/**
+ * Hands every borrower the one connection it was given, which stays open and belongs to the caller.
+ * Like the connection itself, it must only be used by one thread at a time.
+ */
+public final class SingleConnectionProvider implements ConnectionProvider, AutoCloseable {
+    private final Connection connection;
+    private final StatementCache statements;
+    private final ConnectionLease lease = new ConnectionLease() {
+        @Override
+        public Connection connection() {
+            return connection;
+        }
+
+        @Override
+        public StatementCache statements() {
+            return statements;
+        }
+
+        @Override
+        public void close() {
+            statements.leaseReturned();
+        }
+    };
+
+    public SingleConnectionProvider(Connection connection) {
+        this(connection, StatementCache.DEFAULT_CAPACITY);
+    }
+
+    public SingleConnectionProvider(Connection connection, int statementCacheSize) {
+        this.connection = connection;
+        this.statements = new StatementCache(connection, statementCacheSize);
+    }
+
+    @Override
+    public ConnectionLease borrow() {
+        statements.leaseBorrowed();
+        return lease;
+    }
+
+    /**
+     * Closes the cached statements, leaving the connection open.
+     */
+    @Override
+    public void close() {
+        statements.close();
+    }
+}
@@ -0,0 +1,99 @@
+package com.mcgann.peopledb.connection;
+
+import com.mcgann.peopledb.model.CrudOperation;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bounded LRU of the PreparedStatements prepared on one connection, keyed by operation and SQL text.
+ * Statements pushed out of the cache, or still held when the cache is closed, are closed. While a lease on the
+ * connection is open, pushed out statements are only closed once it is returned, since an operation further up
+ * the stack, e.g. a save binding its addresses through a nested save, may still be using them.
+ * Like the connection it wraps, a cache must only be used by one thread at a time.
+ */
+public final class StatementCache implements AutoCloseable {
+    public static final int DEFAULT_CAPACITY = 32;
+
+    private record Key(CrudOperation operationType, String sql, int autoGeneratedKeys) {}
+
+    private final Connection connection;
+    private final Map<Key, PreparedStatement> statements;
+    // Pushed out while leases were open; closed when the last one is returned.
+    private final List<PreparedStatement> retired = new ArrayList<>();
+    private int leases;
+
+    public StatementCache(Connection connection) {
+        this(connection, DEFAULT_CAPACITY);
+    }
+
+    public StatementCache(Connection connection, int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("Statement cache capacity must be at least 1.");
+        this.connection = connection;
+        this.statements = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, PreparedStatement> eldest) {
+                if (size() <= capacity) return false;
+                if (leases > 0) retired.add(eldest.getValue());
+                else closeQuietly(eldest.getValue());
+                return true;
+            }
+        };
+    }
+
+    public PreparedStatement prepare(CrudOperation operationType, String sql) throws SQLException {
+        return prepare(operationType, sql, Statement.NO_GENERATED_KEYS);
+    }
+
+    public PreparedStatement prepare(CrudOperation operationType, String sql, int autoGeneratedKeys) throws SQLException {
+        Key key = new Key(operationType, sql, autoGeneratedKeys);
+        PreparedStatement ps = statements.get(key);
+        if (ps == null || ps.isClosed()) {
+            ps = connection.prepareStatement(sql, autoGeneratedKeys);
+            statements.put(key, ps);
+        }
+        return ps;
+    }
+
+    /**
+     * Called by the provider each time a lease on the connection is borrowed, nested borrows included.
+     */
+    void leaseBorrowed() {
+        leases++;
+    }
+
+    /**
+     * Called by the provider each time a lease is closed; closes the retired statements once none are open.
+     */
+    void leaseReturned() {
+        leases = Math.max(leases - 1, 0);
+        if (leases > 0) return;
+        retired.forEach(StatementCache::closeQuietly);
+        retired.clear();
+    }
+
+    public int size() {
+        return statements.size();
+    }
+
+    @Override
+    public void close() {
+        statements.values().forEach(StatementCache::closeQuietly);
+        statements.clear();
+        retired.forEach(StatementCache::closeQuietly);
+        retired.clear();
+    }
+
+    private static void closeQuietly(Statement statement) {
+        try {
+            statement.close();
+        } catch (SQLException ignored) {
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.mcgann.peopledb.exception;
+
+public class UnableToExportException extends RuntimeException {
+    public UnableToExportException(String message) {
+        super(message);
+    }
+
+    public UnableToExportException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,11 @@
+package com.mcgann.peopledb.exception;
+
+public class UnableToImportException extends RuntimeException {
+    public UnableToImportException(String message) {
+        super(message);
+    }
+
+    public UnableToImportException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
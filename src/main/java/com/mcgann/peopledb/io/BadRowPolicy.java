@@ -0,0 +1,15 @@
+package com.mcgann.peopledb.io;
+
+/**
+ * What {@link CsvImporter} does with a row it can't turn into a person.
+ */
+public enum BadRowPolicy {
+    /**
+     * Stops the import with an UnableToImportException naming the row. Batches written before it stay written.
+     */
+    FAIL,
+    /**
+     * Counts the row as rejected, reports it in {@link ImportStats} and carries on.
+     */
+    SKIP
+}
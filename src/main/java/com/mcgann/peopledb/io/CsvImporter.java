@@ -0,0 +1,324 @@
+package com.mcgann.peopledb.io;
+
+import com.mcgann.peopledb.exception.UnableToImportException;
+import com.mcgann.peopledb.model.Address;
+import com.mcgann.peopledb.model.Person;
+import com.mcgann.peopledb.model.Region;
+import com.mcgann.peopledb.repository.PeopleRepository;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Imports people from a CSV file in the {@link PeopleCsv} layout as a pipeline: one thread reads records through
+ * NIO buffers, a pool parses each batch of records into people while earlier batches are written, and the calling
+ * thread writes them with JDBC batches through the repository. The reader waits once queueCapacity batches are
+ * waiting to be written, and at most sharedAddresses addresses are remembered, so memory stays bounded however
+ * large the file is.
+ * <p>
+ * FIRST_NAME, LAST_NAME and DOB columns are required; SALARY, EMAIL and the HOME_ and BUSINESS_ address columns are
+ * optional. DOB is an ISO date, taken as midnight UTC, or an ISO date-time with an offset. Addresses with the same
+ * fields as a recently seen one are shared by the people living at them rather than saved again; enable
+ * deduplication on the repository's {@code AddressRepository} to save each address once however far apart its
+ * rows are.
+ * <p>
+ * Batches are committed as they are written, unless the caller has a transaction open on the repository's
+ * connection.
+ */
+public final class CsvImporter {
+    public static final int MAX_REJECTED_REPORTED = 100;
+
+    private static final AtomicInteger IMPORT_COUNT = new AtomicInteger();
+    private static final Future<ParsedBatch> END = CompletableFuture.completedFuture(null);
+
+    private final PeopleRepository repository;
+    private final ImportConfig config;
+
+    public CsvImporter(PeopleRepository repository) {
+        this(repository, ImportConfig.defaults());
+    }
+
+    public CsvImporter(PeopleRepository repository, ImportConfig config) {
+        this.repository = repository;
+        this.config = config;
+    }
+
+    public ImportStats importCsv(Path file) {
+        return importCsv(file, stats -> {});
+    }
+
+    /**
+     * @param progress Called on the calling thread after each batch is written.
+     * @throws UnableToImportException If the file can't be read, lacks a required column, or holds a bad row while
+     * the policy is {@link BadRowPolicy#FAIL}.
+     */
+    public ImportStats importCsv(Path file, Consumer<ImportStats> progress) {
+        Progress stats = new Progress();
+        int importNumber = IMPORT_COUNT.incrementAndGet();
+        BlockingQueue<Future<ParsedBatch>> batches = new ArrayBlockingQueue<>(config.queueCapacity());
+        ExecutorService parsers = Executors.newFixedThreadPool(config.parserThreads(),
+                daemonThreads("csv-import-" + importNumber + "-parser"));
+        ExecutorService reader = Executors.newSingleThreadExecutor(daemonThreads("csv-import-" + importNumber +
+                "-reader"));
+        try {
+            Future<?> reading = reader.submit(() -> {
+                boolean interrupted = false;
+                try {
+                    read(file, batches, parsers);
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                    throw e;
+                } finally {
+                    // Only shutdownNow interrupts the reader, once the writer has stopped taking batches, so END
+                    // could wait forever for room in a full queue.
+                    if (!interrupted) batches.put(END);
+                }
+                return null;
+            });
+            Map<AddressKey, Address> addresses = recentAddresses(config.sharedAddresses());
+            for (Future<ParsedBatch> next = batches.take(); next != END; next = batches.take()) {
+                ParsedBatch batch = next.get();
+                stats.rowsRead += batch.rows();
+                stats.reject(batch.rejected());
+                if (!batch.rejected().isEmpty() && config.badRowPolicy() == BadRowPolicy.FAIL) {
+                    RejectedRow row = batch.rejected().get(0);
+                    throw new UnableToImportException("Bad row at line " + row.line() + " of " + file + ": " +
+                            row.reason());
+                }
+                stats.addressesSaved += shareAddresses(batch.people(), addresses);
+                repository.saveAll(batch.people(), config.batchSize());
+                stats.rowsImported += batch.people().size();
+                progress.accept(stats.snapshot());
+            }
+            reading.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new UnableToImportException("Interrupted while importing " + file, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UnableToImportException cause) throw cause;
+            throw new UnableToImportException("Failed to import " + file, e.getCause());
+        } finally {
+            reader.shutdownNow();
+            parsers.shutdownNow();
+        }
+        return stats.snapshot();
+    }
+
+    /**
+     * Reads the header, then hands each batch of records to the parsers, queueing the results in file order.
+     */
+    private void read(Path file, BlockingQueue<Future<ParsedBatch>> batches, ExecutorService parsers)
+            throws IOException, InterruptedException {
+        try (CsvRecordReader records = new CsvRecordReader(file)) {
+            String header = records.next();
+            if (header == null) return;
+            Columns columns = new Columns(PeopleCsv.fields(header));
+            List<String> batch = new ArrayList<>(config.batchSize());
+            long[] lines = new long[config.batchSize()];
+            for (String record = records.next(); record != null; record = records.next()) {
+                if (record.isBlank()) continue;
+                lines[batch.size()] = records.line();
+                batch.add(record);
+                if (batch.size() == config.batchSize()) {
+                    List<String> toParse = batch;
+                    long[] toParseLines = lines;
+                    batches.put(parsers.submit(() -> parse(toParse, toParseLines, columns)));
+                    batch = new ArrayList<>(config.batchSize());
+                    lines = new long[config.batchSize()];
+                }
+            }
+            if (!batch.isEmpty()) {
+                List<String> toParse = batch;
+                long[] toParseLines = lines;
+                batches.put(parsers.submit(() -> parse(toParse, toParseLines, columns)));
+            }
+        } catch (IOException e) {
+            throw new UnableToImportException("Unable to read " + file, e);
+        }
+    }
+
+    private static ParsedBatch parse(List<String> records, long[] lines, Columns columns) {
+        List<Person> people = new ArrayList<>(records.size());
+        List<RejectedRow> rejected = new ArrayList<>();
+        for (int i = 0; i < records.size(); i++) {
+            try {
+                people.add(columns.person(PeopleCsv.fields(records.get(i))));
+            } catch (RuntimeException e) {
+                rejected.add(new RejectedRow(lines[i], e.getMessage()));
+            }
+        }
+        return new ParsedBatch(records.size(), people, rejected);
+    }
+
+    /**
+     * Replaces each address with a remembered one with the same fields, so it isn't inserted again.
+     * @return How many of the batch's addresses are new.
+     */
+    private static int shareAddresses(List<Person> people, Map<AddressKey, Address> addresses) {
+        int added = 0;
+        for (Person person : people) {
+            Address home = person.getHomeAddress().orElse(null);
+            if (home != null) {
+                Address shared = addresses.putIfAbsent(new AddressKey(home), home);
+                if (shared == null) added++;
+                else person.setHomeAddress(shared);
+            }
+            Address business = person.getBusinessAddress().orElse(null);
+            if (business != null) {
+                Address shared = addresses.putIfAbsent(new AddressKey(business), business);
+                if (shared == null) added++;
+                else person.setBusinessAddress(shared);
+            }
+        }
+        return added;
+    }
+
+    /**
+     * An access-ordered map forgetting its least recently used address beyond capacity.
+     */
+    private static Map<AddressKey, Address> recentAddresses(int capacity) {
+        return new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<AddressKey, Address> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return r -> {
+            Thread thread = new Thread(r, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private record ParsedBatch(int rows, List<Person> people, List<RejectedRow> rejected) {}
+
+    private record AddressKey(String streetAddress, String address2, String city, String state, String postcode,
+                              String country, String county, Region region) {
+        private AddressKey(Address address) {
+            this(address.streetAddress(), address.address2(), address.city(), address.state(), address.postcode(),
+                    address.country(), address.county(), address.region());
+        }
+    }
+
+    /**
+     * The index of each known column in the header, or -1 for columns the file doesn't have.
+     */
+    private static final class Columns {
+        private final int size;
+        private final int firstName, lastName, dob, salary, email;
+        private final int[] home, business;
+
+        private Columns(List<String> header) {
+            List<String> names = header.stream()
+                    .map(name -> name == null ? "" : name.trim().toUpperCase(Locale.ROOT))
+                    .toList();
+            this.size = names.size();
+            this.firstName = required(names, PeopleCsv.FIRST_NAME);
+            this.lastName = required(names, PeopleCsv.LAST_NAME);
+            this.dob = required(names, PeopleCsv.DOB);
+            this.salary = names.indexOf(PeopleCsv.SALARY);
+            this.email = names.indexOf(PeopleCsv.EMAIL);
+            this.home = PeopleCsv.ADDRESS_COLUMNS.stream().mapToInt(c -> names.indexOf(PeopleCsv.HOME + c)).toArray();
+            this.business = PeopleCsv.ADDRESS_COLUMNS.stream()
+                    .mapToInt(c -> names.indexOf(PeopleCsv.BUSINESS + c)).toArray();
+        }
+
+        private static int required(List<String> names, String column) {
+            int index = names.indexOf(column);
+            if (index < 0) throw new UnableToImportException("The header has no " + column + " column.");
+            return index;
+        }
+
+        private Person person(List<String> fields) {
+            if (fields.size() != size) {
+                throw new IllegalArgumentException("Expected " + size + " fields but found " + fields.size() + ".");
+            }
+            Person person = new Person(fields.get(firstName), fields.get(lastName), dob(fields.get(dob)));
+            if (salary >= 0) person.setSalary(salary(fields.get(salary)));
+            if (email >= 0) person.setEmail(fields.get(email));
+            person.setHomeAddress(address(fields, home));
+            person.setBusinessAddress(address(fields, business));
+            return person;
+        }
+
+        private static ZonedDateTime dob(String value) {
+            if (value == null) throw new IllegalArgumentException("DOB is missing.");
+            return value.indexOf('T') < 0 ? LocalDate.parse(value).atStartOfDay(ZoneOffset.UTC)
+                    : ZonedDateTime.parse(value);
+        }
+
+        private static BigDecimal salary(String value) {
+            if (value == null) return null;
+            try {
+                return new BigDecimal(value);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Salary " + value + " is not a number.");
+            }
+        }
+
+        /**
+         * @return The address, or null when the file has none of its columns or they are all empty.
+         */
+        private static Address address(List<String> fields, int[] columns) {
+            String[] values = new String[columns.length];
+            boolean any = false;
+            for (int i = 0; i < columns.length; i++) {
+                values[i] = columns[i] < 0 ? null : fields.get(columns[i]);
+                any |= values[i] != null;
+            }
+            if (!any) return null;
+            String region = values[7];
+            return new Address(null, values[0], values[1], values[2], values[3], values[4], values[5], values[6],
+                    region == null ? null : Region.valueOf(region.toUpperCase(Locale.ROOT)));
+        }
+    }
+
+    /**
+     * Totals kept by the writing thread.
+     */
+    private static final class Progress {
+        private final long start = System.nanoTime();
+        private final List<RejectedRow> rejected = new ArrayList<>();
+        private long rowsRead;
+        private long rowsImported;
+        private long rowsRejected;
+        private long addressesSaved;
+
+        private void reject(List<RejectedRow> rows) {
+            rowsRejected += rows.size();
+            for (RejectedRow row : rows) {
+                if (rejected.size() < MAX_REJECTED_REPORTED) rejected.add(row);
+            }
+        }
+
+        private ImportStats snapshot() {
+            return new ImportStats(rowsRead, rowsImported, rowsRejected, addressesSaved,
+                    Duration.ofNanos(System.nanoTime() - start), Collections.unmodifiableList(List.copyOf(rejected)));
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.mcgann.peopledb.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads a UTF-8 CSV file one record at a time through a FileChannel and a pair of reusable buffers. A record ends at
+ * a line break outside quotes, so quoted fields may span lines. Not thread-safe.
+ */
+final class CsvRecordReader implements AutoCloseable {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final FileChannel channel;
+    private final ByteBuffer bytes = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE).flip();
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final StringBuilder record = new StringBuilder();
+    private boolean endOfInput;
+    private boolean flushed;
+    private long lines;
+    private long recordLine;
+
+    CsvRecordReader(Path file) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+    }
+
+    /**
+     * @return The next record without its line break, or null at the end of the file.
+     */
+    String next() throws IOException {
+        record.setLength(0);
+        recordLine = lines + 1;
+        boolean quoted = false;
+        while (true) {
+            if (!chars.hasRemaining() && !fill()) {
+                if (record.isEmpty()) return null;
+                lines++;
+                return record.toString();
+            }
+            char c = chars.get();
+            if (c == '"') {
+                quoted = !quoted;
+            } else if (c == '\n') {
+                lines++;
+                if (!quoted) {
+                    int length = record.length();
+                    if (length > 0 && record.charAt(length - 1) == '\r') record.setLength(length - 1);
+                    return record.toString();
+                }
+            } else if (c == '\uFEFF' && lines == 0 && record.isEmpty()) {
+                continue;
+            }
+            record.append(c);
+        }
+    }
+
+    /**
+     * @return The line the last record returned by next started on, counting from 1.
+     */
+    long line() {
+        return recordLine;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * @return Whether any chars were decoded; false at the end of the file, however often it's called.
+     */
+    private boolean fill() throws IOException {
+        chars.clear();
+        while (chars.position() == 0 && !flushed) {
+            if (!endOfInput && channel.read(bytes) < 0) endOfInput = true;
+            bytes.flip();
+            CoderResult result = decoder.decode(bytes, chars, endOfInput);
+            // The decoder can't be used once flushed, so only flush once the last bytes are decoded.
+            if (endOfInput && result.isUnderflow()) flushed = decoder.flush(chars).isUnderflow();
+            bytes.compact();
+        }
+        chars.flip();
+        return chars.hasRemaining();
+    }
+}
@@ -0,0 +1,30 @@
+package com.mcgann.peopledb.io;
+
+/**
+ * Settings for a {@link PeopleExporter}.
+ * @param gzip Whether to compress the file with gzip.
+ * @param fetchSize Rows the driver fetches from the cursor at a time.
+ */
+public record ExportConfig(ExportFormat format, boolean gzip, int fetchSize) {
+
+    public ExportConfig {
+        if (format == null) throw new IllegalArgumentException("Format is required.");
+        if (fetchSize < 1) throw new IllegalArgumentException("Fetch size must be at least 1.");
+    }
+
+    public static ExportConfig defaults() {
+        return new ExportConfig(ExportFormat.CSV, false, 1000);
+    }
+
+    public ExportConfig withFormat(ExportFormat format) {
+        return new ExportConfig(format, gzip, fetchSize);
+    }
+
+    public ExportConfig withGzip(boolean gzip) {
+        return new ExportConfig(format, gzip, fetchSize);
+    }
+
+    public ExportConfig withFetchSize(int fetchSize) {
+        return new ExportConfig(format, gzip, fetchSize);
+    }
+}
@@ -0,0 +1,8 @@
+package com.mcgann.peopledb.io;
+
+public enum ExportFormat {
+    /** The {@link PeopleCsv} layout, readable by {@link CsvImporter}. */
+    CSV,
+    /** One JSON object per line, keyed by the CSV column names. */
+    JSON_LINES
+}
@@ -0,0 +1,14 @@
+package com.mcgann.peopledb.io;
+
+import java.time.Duration;
+
+/**
+ * The outcome of an export.
+ * @param bytesWritten The size of the file, after compression if it is gzipped.
+ */
+public record ExportStats(long rowsExported, long bytesWritten, Duration elapsed) {
+
+    public double rowsPerSecond() {
+        return elapsed.isZero() ? 0 : rowsExported * 1e9 / elapsed.toNanos();
+    }
+}
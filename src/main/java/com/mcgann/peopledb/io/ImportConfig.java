@@ -0,0 +1,46 @@
+package com.mcgann.peopledb.io;
+
+/**
+ * Settings for a {@link CsvImporter}.
+ * @param batchSize Rows parsed as one unit of work and written as one JDBC batch.
+ * @param parserThreads Threads turning rows into people while earlier batches are written.
+ * @param queueCapacity Batches read ahead of the writer; the reader waits when this many are queued.
+ * @param badRowPolicy Whether a bad row stops the import or is skipped.
+ * @param sharedAddresses Distinct addresses remembered so later rows at them share one row; the least recently
+ * used are forgotten beyond this, and saved again if they recur.
+ */
+public record ImportConfig(int batchSize, int parserThreads, int queueCapacity, BadRowPolicy badRowPolicy,
+                           int sharedAddresses) {
+
+    public ImportConfig {
+        if (batchSize < 1) throw new IllegalArgumentException("Batch size must be at least 1.");
+        if (parserThreads < 1) throw new IllegalArgumentException("Parser threads must be at least 1.");
+        if (queueCapacity < 1) throw new IllegalArgumentException("Queue capacity must be at least 1.");
+        if (sharedAddresses < 0) throw new IllegalArgumentException("Shared addresses must not be negative.");
+    }
+
+    public static ImportConfig defaults() {
+        int parserThreads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        return new ImportConfig(1000, parserThreads, parserThreads * 2, BadRowPolicy.FAIL, 10_000);
+    }
+
+    public ImportConfig withBatchSize(int batchSize) {
+        return new ImportConfig(batchSize, parserThreads, queueCapacity, badRowPolicy, sharedAddresses);
+    }
+
+    public ImportConfig withParserThreads(int parserThreads) {
+        return new ImportConfig(batchSize, parserThreads, queueCapacity, badRowPolicy, sharedAddresses);
+    }
+
+    public ImportConfig withQueueCapacity(int queueCapacity) {
+        return new ImportConfig(batchSize, parserThreads, queueCapacity, badRowPolicy, sharedAddresses);
+    }
+
+    public ImportConfig withBadRowPolicy(BadRowPolicy badRowPolicy) {
+        return new ImportConfig(batchSize, parserThreads, queueCapacity, badRowPolicy, sharedAddresses);
+    }
+
+    public ImportConfig withSharedAddresses(int sharedAddresses) {
+        return new ImportConfig(batchSize, parserThreads, queueCapacity, badRowPolicy, sharedAddresses);
+    }
+}
@@ -0,0 +1,19 @@
+package com.mcgann.peopledb.io;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Progress of an import so far, or its outcome once it has finished.
+ * @param rowsRead Rows parsed, not counting the header.
+ * @param addressesSaved Addresses inserted; a repeated address is only saved again once the importer has forgotten
+ * it, see {@link ImportConfig#sharedAddresses()}.
+ * @param rejected The first {@link CsvImporter#MAX_REJECTED_REPORTED} rejected rows.
+ */
+public record ImportStats(long rowsRead, long rowsImported, long rowsRejected, long addressesSaved,
+                          Duration elapsed, List<RejectedRow> rejected) {
+
+    public double rowsPerSecond() {
+        return elapsed.isZero() ? 0 : rowsImported * 1e9 / elapsed.toNanos();
+    }
+}
@@ -0,0 +1,62 @@
+package com.mcgann.peopledb.io;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The CSV layout for people: a header row naming the columns, in any order, then one person per row. Fields holding
+ * a comma, quote or line break are quoted, with quotes inside them doubled. An empty field is a null value.
+ */
+final class PeopleCsv {
+    static final String FIRST_NAME = "FIRST_NAME", LAST_NAME = "LAST_NAME", DOB = "DOB", SALARY = "SALARY",
+            EMAIL = "EMAIL";
+    // Written by PeopleExporter for reference and ignored on import, which assigns new IDs.
+    static final String ID = "ID", PARENT_ID = "PARENT_ID", SPOUSE_ID = "SPOUSE_ID";
+    static final String HOME = "HOME_", BUSINESS = "BUSINESS_";
+    // Address columns, each prefixed with HOME or BUSINESS.
+    static final List<String> ADDRESS_COLUMNS = List.of("STREET_ADDRESS", "ADDRESS2", "CITY", "STATE", "POSTCODE",
+            "COUNTRY", "COUNTY", "REGION");
+
+    private PeopleCsv() {
+    }
+
+    /**
+     * Splits one record, which may span lines inside quotes, into its fields.
+     * @throws IllegalArgumentException If a quote is left open.
+     */
+    static List<String> fields(String record) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        boolean wasQuoted = false;
+        for (int i = 0; i < record.length(); i++) {
+            char c = record.charAt(i);
+            if (quoted) {
+                if (c != '"') {
+                    field.append(c);
+                } else if (i + 1 < record.length() && record.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"') {
+                quoted = true;
+                wasQuoted = true;
+            } else if (c == ',') {
+                fields.add(value(field, wasQuoted));
+                field.setLength(0);
+                wasQuoted = false;
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) throw new IllegalArgumentException("Unclosed quote.");
+        fields.add(value(field, wasQuoted));
+        return fields;
+    }
+
+    private static String value(StringBuilder field, boolean wasQuoted) {
+        return field.isEmpty() && !wasQuoted ? null : field.toString();
+    }
+}
@@ -0,0 +1,298 @@
+package com.mcgann.peopledb.io;
+
+import com.mcgann.peopledb.exception.UnableToExportException;
+import com.mcgann.peopledb.repository.PeopleRepository;
+import com.mcgann.peopledb.repository.RowHandler;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Exports every person with their addresses, parent and spouse IDs to a CSV or JSON-lines file. Rows are read from
+ * a forward-only cursor and formatted into one reused line buffer, which is encoded straight into a direct byte
+ * buffer and written to the file's channel, so memory use doesn't grow with the table.
+ * <p>
+ * Columns are named as in {@link PeopleCsv}, so a CSV export can be read back by {@link CsvImporter}. DOBs are
+ * written as ISO date-times in UTC, as they are stored. The file is written next to its path, forced to disk and
+ * moved into place once complete; if the export fails, the partly written file is deleted.
+ */
+public final class PeopleExporter {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final PeopleRepository repository;
+    private final ExportConfig config;
+
+    public PeopleExporter(PeopleRepository repository) {
+        this(repository, ExportConfig.defaults());
+    }
+
+    public PeopleExporter(PeopleRepository repository, ExportConfig config) {
+        this.repository = repository;
+        this.config = config;
+    }
+
+    /**
+     * @throws UnableToExportException If the file can't be written or the people can't be read.
+     */
+    public ExportStats export(Path file) {
+        long start = System.nanoTime();
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        long rows;
+        try {
+            try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+                 GZIPOutputStream gzip = config.gzip()
+                         ? new GZIPOutputStream(Channels.newOutputStream(out), BUFFER_SIZE) : null) {
+                RowWriter writer = new RowWriter(gzip == null ? out : Channels.newChannel(gzip), config.format());
+                rows = repository.forEachExportRow(config.fetchSize(), writer);
+                writer.drain();
+                if (gzip != null) gzip.finish();
+                // So a crash after the move can't leave a renamed but incomplete file.
+                out.force(true);
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return new ExportStats(rows, Files.size(file), Duration.ofNanos(System.nanoTime() - start));
+        } catch (IOException | RuntimeException e) {
+            try {
+                Files.deleteIfExists(temporary);
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw new UnableToExportException("Unable to export people to " + file, e);
+        }
+    }
+
+    /**
+     * Formats one row at a time into a reused line and writes it through a reused byte buffer.
+     */
+    private static final class RowWriter implements RowHandler {
+        private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+        private final WritableByteChannel channel;
+        private final ExportFormat format;
+        private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        private final ByteBuffer bytes = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        private final StringBuilder line = new StringBuilder(256);
+        private char[] chars = new char[256];
+        private CharBuffer pending = CharBuffer.wrap(chars);
+        private int[] types;
+        // JSON-lines keys, already quoted and followed by a colon.
+        private String[] keys;
+
+        private RowWriter(WritableByteChannel channel, ExportFormat format) {
+            this.channel = channel;
+            this.format = format;
+        }
+
+        @Override
+        public void handle(ResultSet row) throws SQLException {
+            if (format == ExportFormat.CSV) {
+                for (int column = 1; column <= types.length; column++) {
+                    if (column > 1) line.append(',');
+                    appendCsv(row, column);
+                }
+            } else {
+                line.append('{');
+                for (int column = 1; column <= types.length; column++) {
+                    if (column > 1) line.append(',');
+                    line.append(keys[column - 1]);
+                    appendJson(row, column);
+                }
+                line.append('}');
+            }
+            endLine();
+        }
+
+        /**
+         * Reads the column types and writes the CSV header, so an empty export still has one.
+         */
+        @Override
+        public void start(ResultSetMetaData metadata) throws SQLException {
+            types = new int[metadata.getColumnCount()];
+            keys = new String[types.length];
+            for (int column = 1; column <= types.length; column++) {
+                types[column - 1] = metadata.getColumnType(column);
+                String label = metadata.getColumnLabel(column);
+                if (format == ExportFormat.CSV) {
+                    if (column > 1) line.append(',');
+                    line.append(label);
+                } else {
+                    appendJsonString(label);
+                    keys[column - 1] = line.append(':').toString();
+                    line.setLength(0);
+                }
+            }
+            if (format == ExportFormat.CSV) endLine();
+        }
+
+        private void appendCsv(ResultSet row, int column) throws SQLException {
+            switch (types[column - 1]) {
+                case Types.BIGINT, Types.INTEGER, Types.SMALLINT, Types.TINYINT -> {
+                    long value = row.getLong(column);
+                    if (!row.wasNull()) line.append(value);
+                }
+                case Types.DECIMAL, Types.NUMERIC -> {
+                    BigDecimal value = row.getBigDecimal(column);
+                    if (value != null) line.append(value.toPlainString());
+                }
+                case Types.TIMESTAMP -> {
+                    LocalDateTime value = row.getObject(column, LocalDateTime.class);
+                    if (value != null) appendDateTime(value);
+                }
+                default -> {
+                    String value = row.getString(column);
+                    if (value != null) appendCsvString(value);
+                }
+            }
+        }
+
+        private void appendJson(ResultSet row, int column) throws SQLException {
+            switch (types[column - 1]) {
+                case Types.BIGINT, Types.INTEGER, Types.SMALLINT, Types.TINYINT -> {
+                    long value = row.getLong(column);
+                    if (row.wasNull()) line.append("null");
+                    else line.append(value);
+                }
+                case Types.DECIMAL, Types.NUMERIC -> {
+                    BigDecimal value = row.getBigDecimal(column);
+                    line.append(value == null ? "null" : value.toPlainString());
+                }
+                case Types.TIMESTAMP -> {
+                    LocalDateTime value = row.getObject(column, LocalDateTime.class);
+                    if (value == null) {
+                        line.append("null");
+                    } else {
+                        line.append('"');
+                        appendDateTime(value);
+                        line.append('"');
+                    }
+                }
+                default -> {
+                    String value = row.getString(column);
+                    if (value == null) line.append("null");
+                    else appendJsonString(value);
+                }
+            }
+        }
+
+        /**
+         * Quotes the value if it is empty, so it isn't read back as null, or holds a comma, quote or line break.
+         */
+        private void appendCsvString(String value) {
+            boolean quote = value.isEmpty();
+            for (int i = 0; i < value.length() && !quote; i++) {
+                char c = value.charAt(i);
+                quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+            }
+            if (!quote) {
+                line.append(value);
+                return;
+            }
+            line.append('"');
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '"') line.append('"');
+                line.append(c);
+            }
+            line.append('"');
+        }
+
+        private void appendJsonString(String value) {
+            line.append('"');
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                switch (c) {
+                    case '"' -> line.append("\\\"");
+                    case '\\' -> line.append("\\\\");
+                    case '\n' -> line.append("\\n");
+                    case '\r' -> line.append("\\r");
+                    case '\t' -> line.append("\\t");
+                    default -> {
+                        if (c < 0x20) {
+                            line.append("\\u00").append(HEX[c >> 4]).append(HEX[c & 0xF]);
+                        } else {
+                            line.append(c);
+                        }
+                    }
+                }
+            }
+            line.append('"');
+        }
+
+        /**
+         * Appends e.g. 1980-11-15T15:15:00Z, with the fraction of a second only when there is one.
+         */
+        private void appendDateTime(LocalDateTime value) {
+            appendPadded(value.getYear(), 4).append('-');
+            appendPadded(value.getMonthValue(), 2).append('-');
+            appendPadded(value.getDayOfMonth(), 2).append('T');
+            appendPadded(value.getHour(), 2).append(':');
+            appendPadded(value.getMinute(), 2).append(':');
+            appendPadded(value.getSecond(), 2);
+            if (value.getNano() != 0) {
+                line.append('.');
+                appendPadded(value.getNano(), 9);
+            }
+            line.append('Z');
+        }
+
+        private StringBuilder appendPadded(int value, int digits) {
+            for (int limit = 10; --digits > 0; limit *= 10) {
+                if (value < limit) line.append('0');
+            }
+            return line.append(value);
+        }
+
+        private void endLine() {
+            line.append('\n');
+            int length = line.length();
+            if (chars.length < length) {
+                chars = new char[Math.max(length, chars.length * 2)];
+                pending = CharBuffer.wrap(chars);
+            }
+            line.getChars(0, length, chars, 0);
+            line.setLength(0);
+            pending.clear().limit(length);
+            while (true) {
+                CoderResult result = encoder.encode(pending, bytes, false);
+                if (!result.isOverflow()) break;
+                drain();
+            }
+        }
+
+        private void drain() {
+            bytes.flip();
+            try {
+                while (bytes.hasRemaining()) {
+                    channel.write(bytes);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            bytes.clear();
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package com.mcgann.peopledb.io;
+
+/**
+ * A row the importer skipped.
+ * @param line The line of the file the row starts on, counting the header as line 1.
+ */
+public record RejectedRow(long line, String reason) {
+}
@@ -0,0 +1,9 @@
+package com.mcgann.peopledb.metrics;
+
+import java.time.Duration;
+
+/**
+ * How long one generation of a family tree took to insert, e.g. generation 1 being the roots' children.
+ */
+public record GenerationStats(int generation, int size, Duration elapsed) {
+}
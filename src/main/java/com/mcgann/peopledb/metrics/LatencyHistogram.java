@@ -0,0 +1,70 @@
+package com.mcgann.peopledb.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free histogram of nanosecond latencies in power-of-two buckets, so percentiles are accurate to within a
+ * factor of two. Recording is a few atomic increments with no allocation.
+ */
+public final class LatencyHistogram {
+    private static final int BUCKETS = 64;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+    public void record(long nanos) {
+        long value = Math.max(nanos, 0);
+        buckets.incrementAndGet(bucketOf(value));
+        count.increment();
+        totalNanos.add(value);
+        maxNanos.accumulate(value);
+    }
+
+    public long count() {
+        return count.sum();
+    }
+
+    public long totalNanos() {
+        return totalNanos.sum();
+    }
+
+    public long maxNanos() {
+        return maxNanos.get();
+    }
+
+    public double meanNanos() {
+        long n = count();
+        return n == 0 ? 0.0 : (double) totalNanos() / n;
+    }
+
+    /**
+     * @param percentile Between 0 and 100.
+     * @return The upper bound of the bucket holding that percentile, or 0 if nothing was recorded.
+     */
+    public long percentileNanos(double percentile) {
+        long n = count();
+        if (n == 0) return 0;
+        long rank = (long) Math.ceil(percentile / 100.0 * n);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) return Math.min(upperBoundOf(i), maxNanos());
+        }
+        return maxNanos();
+    }
+
+    /**
+     * Bucket b holds values in [2^(b-1), 2^b - 1]; bucket 0 holds 0.
+     */
+    private static int bucketOf(long nanos) {
+        return nanos == 0 ? 0 : BUCKETS - Long.numberOfLeadingZeros(nanos);
+    }
+
+    private static long upperBoundOf(int bucket) {
+        return bucket >= BUCKETS - 1 ? Long.MAX_VALUE : (1L << bucket) - 1;
+    }
+}
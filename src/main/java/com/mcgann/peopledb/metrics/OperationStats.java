@@ -0,0 +1,11 @@
+package com.mcgann.peopledb.metrics;
+
+import com.mcgann.peopledb.model.CrudOperation;
+
+/**
+ * What a {@link RepositoryMetrics} has recorded for one operation type. Percentiles are bucket upper bounds.
+ */
+public record OperationStats(CrudOperation operationType, long count, long errors, long rowsAffected,
+                             double meanNanos, long p50Nanos, long p99Nanos, long maxNanos,
+                             long prepareNanos, long executeNanos) {
+}
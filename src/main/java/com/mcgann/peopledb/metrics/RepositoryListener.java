@@ -0,0 +1,29 @@
+package com.mcgann.peopledb.metrics;
+
+import com.mcgann.peopledb.model.CrudOperation;
+
+/**
+ * Receives timings and outcomes from a repository. Repositories have no listener by default and then skip the
+ * clock reads and callbacks entirely. Callbacks run on the calling thread, so implementations must be thread-safe
+ * when the repository is shared, and should be cheap.
+ */
+public interface RepositoryListener {
+
+    /**
+     * Time spent obtaining a prepared statement, whether it came from the statement cache or was newly prepared.
+     */
+    default void statementPrepared(CrudOperation operationType, long nanos) {}
+
+    /**
+     * Time spent in the driver executing a statement or batch.
+     * @param rowsAffected Rows inserted, updated or deleted; 0 for queries.
+     */
+    default void statementExecuted(CrudOperation operationType, long nanos, long rowsAffected) {}
+
+    /**
+     * Wall-clock time of a whole repository call, including mapping and any cascading operations.
+     */
+    default void operationCompleted(CrudOperation operationType, long nanos) {}
+
+    default void operationFailed(CrudOperation operationType, Exception e) {}
+}
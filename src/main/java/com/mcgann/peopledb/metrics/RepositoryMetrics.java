@@ -0,0 +1,62 @@
+package com.mcgann.peopledb.metrics;
+
+import com.mcgann.peopledb.model.CrudOperation;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A {@link RepositoryListener} that keeps per-operation latency histograms, rows affected, statement prepare and
+ * execute time, and error counts. Safe to share between repositories and threads.
+ */
+public final class RepositoryMetrics implements RepositoryListener {
+    private final Map<CrudOperation, Counters> counters = new EnumMap<>(CrudOperation.class);
+
+    private static final class Counters {
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder rowsAffected = new LongAdder();
+        private final LongAdder prepareNanos = new LongAdder();
+        private final LongAdder executeNanos = new LongAdder();
+    }
+
+    public RepositoryMetrics() {
+        for (CrudOperation operationType : CrudOperation.values()) {
+            counters.put(operationType, new Counters());
+        }
+    }
+
+    @Override
+    public void statementPrepared(CrudOperation operationType, long nanos) {
+        counters.get(operationType).prepareNanos.add(nanos);
+    }
+
+    @Override
+    public void statementExecuted(CrudOperation operationType, long nanos, long rowsAffected) {
+        Counters c = counters.get(operationType);
+        c.executeNanos.add(nanos);
+        c.rowsAffected.add(rowsAffected);
+    }
+
+    @Override
+    public void operationCompleted(CrudOperation operationType, long nanos) {
+        counters.get(operationType).latency.record(nanos);
+    }
+
+    @Override
+    public void operationFailed(CrudOperation operationType, Exception e) {
+        counters.get(operationType).errors.increment();
+    }
+
+    public LatencyHistogram latency(CrudOperation operationType) {
+        return counters.get(operationType).latency;
+    }
+
+    public OperationStats stats(CrudOperation operationType) {
+        Counters c = counters.get(operationType);
+        return new OperationStats(operationType, c.latency.count(), c.errors.sum(), c.rowsAffected.sum(),
+                c.latency.meanNanos(), c.latency.percentileNanos(50), c.latency.percentileNanos(99),
+                c.latency.maxNanos(), c.prepareNanos.sum(), c.executeNanos.sum());
+    }
+}
@@ -4,7 +4,24 @@ public enum CrudOperation {
     SAVE,
     UPDATE,
     FIND_BY_ID,
+    FIND_BY_IDS,
     FIND_ALL,
+    FIND_PAGE,
+    FIND_CHILDREN,
+    FIND_BY_CONTENT_HASH,
+    FIND_BY_EMAIL,
+    FIND_BY_LAST_NAME,
+    FIND_BY_HOME_REGION,
+    FIND_BY_HOME_CITY,
+    FIND_SUBTREE,
+    SALARY_STATS,
+    COUNT_BY_HOME_REGION,
+    COUNT_BY_HOME_CITY,
+    COUNT_BY_BIRTH_DECADE,
+    COUNT_CHILDREN_PER_PARENT,
+    FIND_ADDRESS_REFERENCES,
+    CLEAR_SPOUSES,
+    EXPORT,
     DELETE_ONE,
     DELETE_MANY,
     COUNT
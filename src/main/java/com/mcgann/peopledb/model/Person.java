@@ -4,6 +4,8 @@ import com.mcgann.peopledb.annotation.Id;
 
 import java.math.BigDecimal;
 import java.time.ZonedDateTime;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashSet;
 import java.util.Objects;
 import java.util.Optional;
@@ -23,6 +25,11 @@ public class Person {
     private Optional<Long> spouseId = Optional.empty();
     private Set<Person> children = new HashSet<>();
     private Optional<Person> parent = Optional.empty();
+    // A new person has never been written, so the columns an update has always written count as changed until it
+    // is saved or loaded. Email, addresses and spouse only count once set, so updating a person built with just an
+    // ID leaves them as they are.
+    private final EnumSet<PersonField> changedFields = EnumSet.of(PersonField.FIRST_NAME, PersonField.LAST_NAME,
+            PersonField.DOB, PersonField.SALARY);
 
     public Person(String firstName, String lastName, ZonedDateTime dob) {
         this.firstName = firstName;
@@ -35,6 +42,7 @@ public class Person {
     }
 
     public void setFirstName(String firstName) {
+        changed(PersonField.FIRST_NAME, this.firstName, firstName);
         this.firstName = firstName;
     }
 
@@ -43,6 +51,7 @@ public class Person {
     }
 
     public void setLastName(String lastName) {
+        changed(PersonField.LAST_NAME, this.lastName, lastName);
         this.lastName = lastName;
     }
 
@@ -51,6 +60,7 @@ public class Person {
     }
 
     public void setDob(ZonedDateTime dob) {
+        changed(PersonField.DOB, this.dob, dob);
         this.dob = dob;
     }
 
@@ -67,6 +77,7 @@ public class Person {
     }
 
     public void setSalary(BigDecimal salary) {
+        changed(PersonField.SALARY, this.salary, salary);
         this.salary = salary;
     }
 
@@ -75,6 +86,7 @@ public class Person {
     }
 
     public void setEmail(String email) {
+        changed(PersonField.EMAIL, this.email, email);
         this.email = email;
     }
 
@@ -103,6 +115,7 @@ public class Person {
     }
 
     public void setHomeAddress(Address homeAddress) {
+        changed(PersonField.HOME_ADDRESS, this.homeAddress.orElse(null), homeAddress);
         this.homeAddress = Optional.ofNullable(homeAddress);
     }
 
@@ -111,6 +124,7 @@ public class Person {
     }
 
     public void setBusinessAddress(Address businessAddress) {
+        changed(PersonField.BUSINESS_ADDRESS, this.businessAddress.orElse(null), businessAddress);
         this.businessAddress = Optional.ofNullable(businessAddress);
     }
 
@@ -119,6 +133,7 @@ public class Person {
     }
 
     public void setSpouseId(Long spouseId) {
+        changed(PersonField.SPOUSE, this.spouseId.orElse(null), spouseId);
         this.spouseId = Optional.ofNullable(spouseId);
     }
 
@@ -142,5 +157,27 @@ public class Person {
     public Set<Person> getChildren() {
         return children;
     }
+
+    /**
+     * @return The fields set to a different value since this person was last saved, loaded or updated.
+     */
+    public Set<PersonField> getChangedFields() {
+        return Collections.unmodifiableSet(changedFields);
+    }
+
+    public boolean hasChanges() {
+        return !changedFields.isEmpty();
+    }
+
+    /**
+     * Records that this person matches their row. Called by the repository after a save, load or update.
+     */
+    public void markClean() {
+        changedFields.clear();
+    }
+
+    private void changed(PersonField field, Object oldValue, Object newValue) {
+        if (!Objects.equals(oldValue, newValue)) changedFields.add(field);
+    }
 }
 
@@ -0,0 +1,15 @@
+package com.mcgann.peopledb.model;
+
+/**
+ * The fields of a {@link Person} that are stored in its own row and tracked for changes.
+ */
+public enum PersonField {
+    FIRST_NAME,
+    LAST_NAME,
+    DOB,
+    SALARY,
+    EMAIL,
+    HOME_ADDRESS,
+    BUSINESS_ADDRESS,
+    SPOUSE
+}
@@ -0,0 +1,9 @@
+package com.mcgann.peopledb.model;
+
+import java.math.BigDecimal;
+
+/**
+ * Salary totals over the people who have a salary; the amounts are null when no one does.
+ */
+public record SalaryStats(long count, BigDecimal total, BigDecimal average, BigDecimal minimum, BigDecimal maximum) {
+}
@@ -1,41 +1,242 @@
 package com.mcgann.peopledb.repository;
 
 import com.mcgann.peopledb.annotation.SQL;
+import com.mcgann.peopledb.connection.ConnectionLease;
+import com.mcgann.peopledb.connection.ConnectionProvider;
+import com.mcgann.peopledb.exception.UnableToSaveException;
 import com.mcgann.peopledb.model.Address;
 import com.mcgann.peopledb.model.CrudOperation;
-import com.mcgann.peopledb.model.Region;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class AddressRepository extends CRUDRepository<Address>{
 
+    public static final int DEFAULT_HASH_CACHE_SIZE = 10_000;
 
     public static final String FIND_ADDRESS_BY_ID = """
             SELECT ID, STREET_ADDRESS, ADDRESS2, CITY, STATE, POSTCODE, COUNTY, REGION, COUNTRY
             FROM ADDRESSES
             WHERE ID=?
             """;
+    public static final String SAVE_ADDRESS_SQL = "INSERT INTO ADDRESSES (STREET_ADDRESS, ADDRESS2, CITY, STATE," +
+            " POSTCODE, COUNTY, REGION, COUNTRY) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+    public static final String SAVE_HASHED_ADDRESS_SQL = "INSERT INTO ADDRESSES (STREET_ADDRESS, ADDRESS2, CITY," +
+            " STATE, POSTCODE, COUNTY, REGION, COUNTRY, CONTENT_HASH) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    public static final String FIND_IDS_BY_CONTENT_HASH_SQL = """
+            SELECT ID, CONTENT_HASH
+            FROM ADDRESSES
+            WHERE CONTENT_HASH = ANY(?)
+            """;
+    public static final String DELETE_ADDRESS_SQL = "DELETE FROM ADDRESSES WHERE ID=?";
+    public static final String DELETE_ADDRESSES_IN_SQL = "DELETE FROM ADDRESSES WHERE ID = ANY(?)";
+
+    private static final AddressRowMapper ADDRESS = new AddressRowMapper("");
+
+    private volatile HashCache hashCache;
 
     public AddressRepository(Connection connection) {
         super(connection);
     }
 
+    public AddressRepository(Connection connection, int statementCacheSize) {
+        super(connection, statementCacheSize);
+    }
+
+    public AddressRepository(ConnectionProvider connections) {
+        super(connections);
+    }
+
+    /**
+     * Makes saves resolve addresses with the same normalized content to one row: an address already saved, by this
+     * or any other repository in deduplicating mode, gets the existing row's ID instead of being inserted again.
+     * <p>
+     * Needs the CONTENT_HASH column and its unique index, added by schema migration 2; this doesn't run DDL, which
+     * would commit any transaction open on the connection. Rows saved before deduplication was enabled have no hash
+     * and are never matched. Recently resolved hashes are remembered, up to hashCacheSize, to save a lookup query
+     * per address in bulk loads.
+     * @throws IllegalStateException If the database hasn't been migrated to include CONTENT_HASH.
+     */
+    public void enableDeduplication(int hashCacheSize) {
+        if (hashCacheSize < 0) throw new IllegalArgumentException("Hash cache size must not be negative.");
+        if (!hasContentHashColumn()) {
+            throw new IllegalStateException("ADDRESSES has no CONTENT_HASH column; run SchemaMigrator first.");
+        }
+        hashCache = new HashCache(hashCacheSize);
+    }
+
+    public void enableDeduplication() {
+        enableDeduplication(DEFAULT_HASH_CACHE_SIZE);
+    }
+
+    public void disableDeduplication() {
+        hashCache = null;
+    }
+
+    public boolean isDeduplicating() {
+        return hashCache != null;
+    }
+
+    private boolean hasContentHashColumn() {
+        try (ConnectionLease lease = connections.borrow();
+             ResultSet rs = lease.connection().getMetaData().getColumns(null, null, "ADDRESSES", "CONTENT_HASH")) {
+            return rs.next();
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Addresses that already have an ID are returned as they are. When deduplicating, an address whose content is
+     * already saved is given that row's ID.
+     */
+    @Override
+    public Address save(Address address) throws UnableToSaveException {
+        return saveAll(List.of(address)).get(0);
+    }
+
+    /**
+     * Like save, for many addresses: when deduplicating, the lookup for already saved content is one query per
+     * batch and identical addresses within the collection are inserted once. Resolved hashes are only remembered
+     * when the connection is in auto-commit mode, since rows saved in a caller's transaction may be rolled back.
+     */
+    @Override
+    public List<Address> saveAll(Collection<Address> addresses, int batchSize) throws UnableToSaveException {
+        List<Address> toSave = new ArrayList<>(addresses);
+        List<Address> unsaved = toSave.stream().filter(a -> a.id() == null).toList();
+        if (unsaved.isEmpty()) return toSave;
+        HashCache hashCache = this.hashCache;
+        if (hashCache == null) {
+            super.saveAll(unsaved, batchSize);
+            return toSave;
+        }
+
+        // Hold the lease throughout, so the lookups and inserts join it and run on the connection checked here.
+        try (ConnectionLease lease = connections.borrow()) {
+            boolean committed = lease.connection().getAutoCommit();
+            Map<String, List<Address>> byHash = unsaved.stream().collect(
+                    Collectors.groupingBy(AddressRepository::contentHash, LinkedHashMap::new, Collectors.toList()));
+            Map<String, Long> ids = resolveHashes(hashCache, byHash.keySet());
+            List<Address> toInsert = byHash.entrySet().stream()
+                    .filter(e -> !ids.containsKey(e.getKey()))
+                    .map(e -> e.getValue().get(0))
+                    .toList();
+            try {
+                super.saveAll(toInsert, batchSize);
+            } catch (UnableToSaveException e) {
+                // Another repository inserted some of the same content since we looked; use its rows.
+                ids.putAll(resolveHashes(hashCache, byHash.keySet()));
+                List<Address> stillMissing = toInsert.stream().filter(a -> !ids.containsKey(contentHash(a))).toList();
+                if (stillMissing.size() == toInsert.size()) throw e;
+                super.saveAll(stillMissing, batchSize);
+            }
+            for (Address inserted : toInsert) {
+                if (inserted.id() != null) ids.put(contentHash(inserted), inserted.id());
+            }
+            byHash.forEach((hash, duplicates) -> {
+                Long id = ids.get(hash);
+                duplicates.forEach(a -> setIdByAnnotation(id, a));
+                if (committed) hashCache.put(hash, id);
+            });
+        } catch (SQLException e) {
+            throw new UnableToSaveException("Failed to save batch of " + unsaved.size() + " addresses", e);
+        }
+        return toSave;
+    }
+
+    @Override
+    public void delete(Address address) {
+        super.delete(address);
+        forgetHashes(List.of(address.id()));
+    }
+
+    @Override
+    public long delete(Address... addresses) {
+        long deleted = super.delete(addresses);
+        forgetHashes(Arrays.stream(addresses).map(Address::id).toList());
+        return deleted;
+    }
+
+    /**
+     * Also forgets the deleted rows' content hashes, so the content is inserted again when next saved.
+     */
+    @Override
+    public long deleteAllById(Collection<Long> ids, int chunkSize) {
+        long deleted = super.deleteAllById(ids, chunkSize);
+        forgetHashes(ids);
+        return deleted;
+    }
+
+    private void forgetHashes(Collection<Long> ids) {
+        HashCache hashCache = this.hashCache;
+        if (hashCache != null) hashCache.remove(ids);
+    }
+
+    private Map<String, Long> resolveHashes(HashCache hashCache, Collection<String> hashes) {
+        Map<String, Long> ids = new LinkedHashMap<>();
+        List<String> toQuery = new ArrayList<>();
+        for (String hash : hashes) {
+            Long id = hashCache.get(hash);
+            if (id != null) {
+                ids.put(hash, id);
+            } else {
+                toQuery.add(hash);
+            }
+        }
+        if (toQuery.isEmpty()) return ids;
+
+        try (ConnectionLease lease = connections.borrow()) {
+            PreparedStatement ps = prepare(lease, CrudOperation.FIND_BY_CONTENT_HASH, () -> FIND_IDS_BY_CONTENT_HASH_SQL);
+            ps.setArray(1, lease.connection().createArrayOf("VARCHAR", toQuery.toArray()));
+            try (ResultSet rs = executeQuery(CrudOperation.FIND_BY_CONTENT_HASH, ps)) {
+                while (rs.next()) {
+                    ids.put(rs.getString("CONTENT_HASH"), rs.getLong("ID"));
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        return ids;
+    }
+
+    /**
+     * SHA-256 of the address fields, each trimmed, with runs of whitespace collapsed and upper-cased, so addresses
+     * differing only in spacing or case hash the same. The ID is not part of the hash.
+     */
+    static String contentHash(Address address) {
+        String normalized = Stream.of(address.streetAddress(), address.address2(), address.city(), address.state(),
+                        address.postcode(), address.county(), String.valueOf(address.region()), address.country())
+                .map(field -> Objects.toString(field, "").trim().replaceAll("\\s+", " ").toUpperCase(Locale.ROOT))
+                .collect(Collectors.joining("\u001F"));
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(normalized.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     @Override
     @SQL(operationType = CrudOperation.FIND_BY_ID, value = FIND_ADDRESS_BY_ID)
     Address extractEntityFromResultsSet(ResultSet rs) throws SQLException {
-        long id = rs.getLong("ID");
-        String streetAddress = rs.getString("STREET_ADDRESS");
-        String address2 = rs.getString("ADDRESS2");
-        String city = rs.getString("CITY");
-        String state = rs.getString("STATE");
-        String postcode = rs.getString("POSTCODE");
-        String county = rs.getString("COUNTY");
-        Region region = Region.valueOf(rs.getString("REGION").toUpperCase());
-        String country = rs.getString("COUNTRY");
-        return new Address(id, streetAddress, address2, city, state, postcode, country, county, region);
+        return ADDRESS.map(rs);
     }
 
     @Override
@@ -44,8 +245,6 @@ public class AddressRepository extends CRUDRepository<Address>{
     }
 
     @Override
-    @SQL(operationType = CrudOperation.SAVE, value = "INSERT INTO ADDRESSES (STREET_ADDRESS, ADDRESS2, CITY, STATE," +
-            " POSTCODE, COUNTY, REGION, COUNTRY) VALUES (?, ?, ?, ?, ?, ?, ?, ?)")
     void mapForSave(Address entity, PreparedStatement ps) throws SQLException {
         ps.setString(1, entity.streetAddress());
         ps.setString(2, entity.address2());
@@ -55,5 +254,62 @@ public class AddressRepository extends CRUDRepository<Address>{
         ps.setString(6, entity.county());
         ps.setString(7, String.valueOf(entity.region()));
         ps.setString(8, entity.country());
+        if (isDeduplicating()) {
+            ps.setString(9, contentHash(entity));
+        }
+    }
+
+    @Override
+    protected String getDeleteSql() {
+        return DELETE_ADDRESS_SQL;
+    }
+
+    @Override
+    protected String getDeleteInSql() {
+        return DELETE_ADDRESSES_IN_SQL;
+    }
+
+    @Override
+    String getSaveSql() {
+        return isDeduplicating() ? SAVE_HASHED_ADDRESS_SQL : SAVE_ADDRESS_SQL;
+    }
+
+    /**
+     * Least recently used content hashes and the IDs of their rows, with the reverse mapping so deleted rows can
+     * be forgotten.
+     */
+    private static final class HashCache {
+        private final Map<String, Long> ids;
+        private final Map<Long, String> hashes = new HashMap<>();
+
+        private HashCache(int maximumSize) {
+            this.ids = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                    if (size() <= maximumSize) return false;
+                    hashes.remove(eldest.getValue());
+                    return true;
+                }
+            };
+        }
+
+        private synchronized Long get(String hash) {
+            return ids.get(hash);
+        }
+
+        private synchronized void put(String hash, Long id) {
+            // Map the ID first, so an entry evicted straight away, e.g. with a size of 0, is unmapped again.
+            String previousHash = hashes.put(id, hash);
+            if (previousHash != null && !previousHash.equals(hash)) ids.remove(previousHash);
+            Long previousId = ids.put(hash, id);
+            if (previousId != null && !previousId.equals(id)) hashes.remove(previousId);
+        }
+
+        private synchronized void remove(Collection<Long> deletedIds) {
+            for (Long id : deletedIds) {
+                String hash = hashes.remove(id);
+                if (hash != null) ids.remove(hash);
+            }
+        }
     }
 }
@@ -0,0 +1,47 @@
+package com.mcgann.peopledb.repository;
+
+import com.mcgann.peopledb.model.Address;
+import com.mcgann.peopledb.model.Region;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Maps the address columns sharing an alias prefix, e.g. "HOME_", by index. Like {@link ColumnIndexes}, one
+ * instance per query shape.
+ */
+final class AddressRowMapper {
+    private static final Region[] REGIONS = Region.values();
+    private static final int ID = 0, STREET_ADDRESS = 1, ADDRESS2 = 2, CITY = 3, STATE = 4, POSTCODE = 5, COUNTY = 6,
+            REGION = 7, COUNTRY = 8;
+
+    private final ColumnIndexes columns;
+
+    AddressRowMapper(String aliasPrefix) {
+        this.columns = new ColumnIndexes(aliasPrefix + "ID", aliasPrefix + "STREET_ADDRESS",
+                aliasPrefix + "ADDRESS2", aliasPrefix + "CITY", aliasPrefix + "STATE", aliasPrefix + "POSTCODE",
+                aliasPrefix + "COUNTY", aliasPrefix + "REGION", aliasPrefix + "COUNTRY");
+    }
+
+    /**
+     * @return The address, or null if the ID column is null, e.g. for a person without one.
+     */
+    Address map(ResultSet rs) throws SQLException {
+        int[] c = columns.resolve(rs);
+        long id = rs.getLong(c[ID]);
+        if (rs.wasNull()) return null;
+        return new Address(id, rs.getString(c[STREET_ADDRESS]), rs.getString(c[ADDRESS2]), rs.getString(c[CITY]),
+                rs.getString(c[STATE]), rs.getString(c[POSTCODE]), rs.getString(c[COUNTRY]), rs.getString(c[COUNTY]),
+                region(rs.getString(c[REGION])));
+    }
+
+    /**
+     * Region.valueOf(name.toUpperCase()) without the upper-cased copy.
+     */
+    static Region region(String name) {
+        for (Region region : REGIONS) {
+            if (region.name().equalsIgnoreCase(name)) return region;
+        }
+        throw new IllegalArgumentException("No region " + name);
+    }
+}
@@ -0,0 +1,103 @@
+package com.mcgann.peopledb.repository;
+
+import com.mcgann.peopledb.connection.ConnectionPool;
+import com.mcgann.peopledb.model.Person;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+/**
+ * Runs PeopleRepository operations on a virtual thread per call and returns CompletableFutures, so callers can fan
+ * out hundreds of lookups and saves without tying up platform threads.
+ * <p>
+ * At most maxConcurrency operations touch the database at once; the rest wait, cheaply, on their virtual threads.
+ * Size it to the connection pool: JDBC drivers block inside synchronized code, which pins the carrier thread, so
+ * letting more calls through than there are connections only parks carriers in the pool's queue.
+ */
+public class AsyncPeopleRepository implements AutoCloseable {
+    private final PeopleRepository repository;
+    private final Semaphore permits;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    /**
+     * @param repository Should be backed by a ConnectionPool, since calls run on many threads at once.
+     */
+    public AsyncPeopleRepository(PeopleRepository repository, int maxConcurrency) {
+        if (maxConcurrency < 1) throw new IllegalArgumentException("Max concurrency must be at least 1.");
+        this.repository = repository;
+        this.permits = new Semaphore(maxConcurrency);
+    }
+
+    /**
+     * Limits concurrency to the pool's maximum size.
+     */
+    public AsyncPeopleRepository(ConnectionPool pool) {
+        this(new PeopleRepository(pool), pool.metrics().maximumSize());
+    }
+
+    public CompletableFuture<Person> save(Person person) {
+        return submit(() -> repository.save(person));
+    }
+
+    public CompletableFuture<Optional<Person>> findById(Long id) {
+        return submit(() -> repository.findById(id));
+    }
+
+    public CompletableFuture<Long> count() {
+        return submit(repository::count);
+    }
+
+    public CompletableFuture<Void> delete(Person person) {
+        return submit(() -> {
+            repository.delete(person);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> delete(Person... people) {
+        return submit(() -> {
+            repository.delete(people);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> update(Person person) {
+        return submit(() -> {
+            repository.update(person);
+            return null;
+        });
+    }
+
+    public PeopleRepository getRepository() {
+        return repository;
+    }
+
+    /**
+     * Waits for submitted operations to finish. The wrapped repository is left open.
+     */
+    @Override
+    public void close() {
+        executor.close();
+    }
+
+    private <R> CompletableFuture<R> submit(Supplier<R> operation) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CompletionException(e);
+            }
+            try {
+                return operation.get();
+            } finally {
+                permits.release();
+            }
+        }, executor);
+    }
+}
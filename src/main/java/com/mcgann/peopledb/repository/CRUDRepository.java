@@ -1,165 +1,683 @@
 package com.mcgann.peopledb.repository;
 
-import com.mcgann.peopledb.annotation.Id;
 import com.mcgann.peopledb.annotation.SQL;
+import com.mcgann.peopledb.cache.EntityCache;
+import com.mcgann.peopledb.connection.ConnectionLease;
+import com.mcgann.peopledb.connection.ConnectionPool;
+import com.mcgann.peopledb.connection.ConnectionProvider;
+import com.mcgann.peopledb.connection.SingleConnectionProvider;
+import com.mcgann.peopledb.connection.StatementCache;
 import com.mcgann.peopledb.exception.UnableToSaveException;
+import com.mcgann.peopledb.metrics.RepositoryListener;
+import com.mcgann.peopledb.metrics.RepositoryMetrics;
 import com.mcgann.peopledb.model.CrudOperation;
 
 import java.sql.*;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
 import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
-import static java.util.stream.Collectors.joining;
+abstract class CRUDRepository <T> implements AutoCloseable {
+    public static final int DEFAULT_BATCH_SIZE = 500;
+    public static final int DEFAULT_FETCH_SIZE = 100;
+    public static final int DEFAULT_DELETE_CHUNK_SIZE = 10_000;
 
-abstract class CRUDRepository <T> {
-    protected Connection connection;
+    protected final ConnectionProvider connections;
+    private final SingleConnectionProvider ownedProvider;
+    private final RepositoryMetadata metadata;
+    private volatile int fetchSize = DEFAULT_FETCH_SIZE;
+    private volatile EntityCache<T> cache;
+    private volatile RepositoryListener listener;
 
     public CRUDRepository(Connection connection) {
-        this.connection = connection;
+        this(connection, StatementCache.DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param statementCacheSize How many prepared statements to keep open on the connection for reuse.
+     */
+    public CRUDRepository(Connection connection, int statementCacheSize) {
+        this(new SingleConnectionProvider(connection, statementCacheSize), true);
+    }
+
+    /**
+     * Borrows a connection from the provider for each operation. With a {@link ConnectionPool}, the repository
+     * can be shared between threads.
+     */
+    public CRUDRepository(ConnectionProvider connections) {
+        this(connections, false);
+    }
+
+    private CRUDRepository(ConnectionProvider connections, boolean ownsProvider) {
+        this.connections = connections;
+        this.ownedProvider = ownsProvider ? (SingleConnectionProvider) connections : null;
+        this.metadata = RepositoryMetadata.of(getClass());
     }
 
     public T save(T entity) throws UnableToSaveException {
-        try {
-            PreparedStatement ps = connection.prepareStatement(getSqlByAnnotation(CrudOperation.SAVE,
-                            this::getSaveSql), Statement.RETURN_GENERATED_KEYS);
+        long start = startOperation();
+        try (ConnectionLease lease = connections.borrow()) {
+            PreparedStatement ps = prepare(lease, CrudOperation.SAVE, this::getSaveSql, Statement.RETURN_GENERATED_KEYS);
 
             mapForSave(entity, ps);
 
-            int recordsAffected = ps.executeUpdate();
-            ResultSet rs = ps.getGeneratedKeys();
-            System.out.printf("Records affected: %d%n", recordsAffected);
+            executeUpdate(CrudOperation.SAVE, ps);
 
-            while (rs.next()) {
-                long id = rs.getLong(1);
+            // Read the key and release the result set before postSave reuses this statement for children.
+            Long id = null;
+            try (ResultSet rs = ps.getGeneratedKeys()) {
+                if (rs.next()) {
+                    id = rs.getLong(1);
+                }
+            }
+            if (id != null) {
+                evictFromCache(entity);
                 setIdByAnnotation(id, entity);
                 postSave(entity, id);
-                System.out.println(entity);
             }
 
         } catch (SQLException e) {
-            e.printStackTrace();
-            throw new UnableToSaveException("Failed to save entity: " + entity);
+            operationFailed(CrudOperation.SAVE, e);
+            throw new UnableToSaveException("Failed to save entity: " + entity, e);
         }
+        operationCompleted(CrudOperation.SAVE, start);
         return entity;
     }
 
+    public List<T> saveAll(Collection<T> entities) throws UnableToSaveException {
+        return saveAll(entities, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Inserts the entities with JDBC batches of at most batchSize rows, assigning each generated ID back to its entity.
+     * @return The saved entities, in iteration order of the given collection.
+     */
+    public List<T> saveAll(Collection<T> entities, int batchSize) throws UnableToSaveException {
+        if (batchSize < 1) throw new IllegalArgumentException("Batch size must be at least 1.");
+        List<T> toSave = new ArrayList<>(entities);
+        for (int from = 0; from < toSave.size(); from += batchSize) {
+            saveBatch(toSave.subList(from, Math.min(from + batchSize, toSave.size())));
+        }
+        return toSave;
+    }
+
+    private void saveBatch(List<T> batch) throws UnableToSaveException {
+        long start = startOperation();
+        List<Long> ids = new ArrayList<>(batch.size());
+        try (ConnectionLease lease = connections.borrow()) {
+            preSaveAll(batch);
+            PreparedStatement ps = prepare(lease, CrudOperation.SAVE, this::getSaveSql, Statement.RETURN_GENERATED_KEYS);
+            for (T entity : batch) {
+                mapForSave(entity, ps);
+                ps.addBatch();
+            }
+            executeBatch(CrudOperation.SAVE, ps);
+            try (ResultSet rs = ps.getGeneratedKeys()) {
+                while (rs.next()) {
+                    ids.add(rs.getLong(1));
+                }
+            }
+        } catch (SQLException e) {
+            operationFailed(CrudOperation.SAVE, e);
+            throw new UnableToSaveException("Failed to save batch of " + batch.size() + " entities", e);
+        }
+        if (ids.size() != batch.size()) {
+            UnableToSaveException e = new UnableToSaveException("Expected " + batch.size() +
+                    " generated IDs but received " + ids.size());
+            operationFailed(CrudOperation.SAVE, e);
+            throw e;
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            evictFromCache(batch.get(i));
+            setIdByAnnotation(ids.get(i), batch.get(i));
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            postSave(batch.get(i), ids.get(i));
+        }
+        operationCompleted(CrudOperation.SAVE, start);
+    }
+
     public Optional<T> findById(Long id) {
-        T foundEntity = null;
+        T foundEntity = cache == null ? null : cache.get(id);
+        if (foundEntity != null) return Optional.of(copyCached(foundEntity));
 
-        try {
-            PreparedStatement ps = connection.prepareStatement(getSqlByAnnotation(CrudOperation.FIND_BY_ID,
-                    this::getFindByIdSql));
+        long start = startOperation();
+        try (ConnectionLease lease = connections.borrow()) {
+            PreparedStatement ps = prepare(lease, CrudOperation.FIND_BY_ID, this::getFindByIdSql);
             ps.setLong(1, id);
-            ResultSet rs = ps.executeQuery();
-            if (rs.next()) {
-                foundEntity = extractEntityFromResultsSet(rs);
+            try (ResultSet rs = executeQuery(CrudOperation.FIND_BY_ID, ps)) {
+                if (rs.next()) {
+                    foundEntity = extractEntityFromResultsSet(rs);
+                }
+            }
+            if (foundEntity != null) {
+                postLoad(lease, List.of(foundEntity));
             }
 
         } catch (SQLException e) {
+            operationFailed(CrudOperation.FIND_BY_ID, e);
             throw new RuntimeException(e);
         }
+        operationCompleted(CrudOperation.FIND_BY_ID, start);
+        if (foundEntity != null && cache != null) {
+            foundEntity = prepareForCache(foundEntity);
+            cache.put(id, foundEntity);
+            foundEntity = copyCached(foundEntity);
+        }
         return Optional.ofNullable(foundEntity);
     }
 
+    /**
+     * Finds all the given IDs with a single query, binding them as one array parameter.
+     * @return The entities found, keyed by ID. IDs that don't exist are absent from the map.
+     */
+    public Map<Long, T> findByIds(Collection<Long> ids) {
+        Map<Long, T> foundEntities = new LinkedHashMap<>();
+        List<Long> idsToQuery = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            T cached = cache == null ? null : cache.get(id);
+            if (cached != null) foundEntities.put(id, copyCached(cached));
+            else idsToQuery.add(id);
+        }
+        if (idsToQuery.isEmpty()) return foundEntities;
+
+        long start = startOperation();
+        try (ConnectionLease lease = connections.borrow()) {
+            PreparedStatement ps = prepare(lease, CrudOperation.FIND_BY_IDS, this::getFindByIdsSql);
+            ps.setArray(1, lease.connection().createArrayOf("BIGINT", idsToQuery.toArray()));
+            Map<Long, T> loadedEntities;
+            try (ResultSet rs = executeQuery(CrudOperation.FIND_BY_IDS, ps)) {
+                loadedEntities = extractEntitiesFromResultSet(rs);
+            }
+            postLoad(lease, loadedEntities.values());
+            loadedEntities.forEach((id, entity) -> {
+                if (cache != null) {
+                    entity = prepareForCache(entity);
+                    cache.put(id, entity);
+                    entity = copyCached(entity);
+                }
+                foundEntities.put(id, entity);
+            });
+        } catch (SQLException e) {
+            operationFailed(CrudOperation.FIND_BY_IDS, e);
+            throw new RuntimeException(e);
+        }
+        operationCompleted(CrudOperation.FIND_BY_IDS, start);
+        return foundEntities;
+    }
+
+    /**
+     * Lazily streams every entity through a forward-only cursor, reading fetchSize rows at a time.
+     * The stream holds its own statement and its connection lease until it is closed, so use it in a
+     * try-with-resources block on the thread that opened it.
+     */
+    public Stream<T> findAll() {
+        return stream(CrudOperation.FIND_ALL, this::getFindAllSql, ps -> {});
+    }
+
+    /**
+     * Streams the rows of the query declared through {@link SQL} for operationType, mapped by extractEntityFromRow,
+     * in the same way as findAll().
+     */
+    protected Stream<T> streamQuery(CrudOperation operationType, StatementBinder binder) {
+        return stream(operationType, () -> {throw new RuntimeException("SQL not defined.");}, binder);
+    }
+
+    /**
+     * Runs the query declared through {@link SQL} for operationType and reads its whole result set, e.g. to
+     * return an aggregate without mapping entities.
+     */
+    protected <R> R query(CrudOperation operationType, StatementBinder binder, ResultReader<R> reader) {
+        long start = startOperation();
+        R result;
+        try (ConnectionLease lease = connections.borrow()) {
+            PreparedStatement ps = prepare(lease, operationType, () -> {throw new RuntimeException("SQL not defined.");});
+            binder.bind(ps);
+            try (ResultSet rs = executeQuery(operationType, ps)) {
+                result = reader.read(rs);
+            }
+        } catch (SQLException e) {
+            operationFailed(operationType, e);
+            throw new RuntimeException(e);
+        }
+        operationCompleted(operationType, start);
+        return result;
+    }
+
+    private Stream<T> stream(CrudOperation operationType, Supplier<String> sqlGetter, StatementBinder binder) {
+        long start = startOperation();
+        ConnectionLease lease;
+        try {
+            lease = connections.borrow();
+        } catch (SQLException e) {
+            operationFailed(operationType, e);
+            throw new RuntimeException(e);
+        }
+        PreparedStatement ps = null;
+        ResultSet rs;
+        try {
+            ps = lease.connection().prepareStatement(
+                    getSqlByAnnotation(operationType, sqlGetter),
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(fetchSize);
+            binder.bind(ps);
+            rs = executeQuery(operationType, ps);
+        } catch (SQLException e) {
+            closeQuietly(ps);
+            lease.close();
+            operationFailed(operationType, e);
+            throw new RuntimeException(e);
+        }
+
+        Spliterator<T> rows = new Spliterators.AbstractSpliterator<>(Long.MAX_VALUE,
+                Spliterator.ORDERED | Spliterator.NONNULL) {
+            @Override
+            public boolean tryAdvance(Consumer<? super T> action) {
+                try {
+                    if (!rs.next()) return false;
+                    action.accept(extractEntityFromRow(rs));
+                    return true;
+                } catch (SQLException e) {
+                    operationFailed(operationType, e);
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        PreparedStatement statement = ps;
+        return StreamSupport.stream(rows, false).onClose(() -> {
+            closeQuietly(statement);
+            lease.close();
+            operationCompleted(operationType, start);
+        });
+    }
+
+    /**
+     * Keyset pagination over the entities' IDs.
+     * @param afterId Only entities with a greater ID are returned; pass 0 for the first page and the last ID
+     *                of the previous page after that.
+     * @param limit The maximum number of entities in the page.
+     */
+    public List<T> findAll(long afterId, int limit) {
+        long start = startOperation();
+        List<T> page = new ArrayList<>(Math.min(limit, fetchSize));
+        try (ConnectionLease lease = connections.borrow()) {
+            PreparedStatement ps = prepare(lease, CrudOperation.FIND_PAGE, this::getFindPageSql);
+            ps.setLong(1, afterId);
+            ps.setInt(2, limit);
+            try (ResultSet rs = executeQuery(CrudOperation.FIND_PAGE, ps)) {
+                while (rs.next()) {
+                    page.add(extractEntityFromRow(rs));
+                }
+            }
+        } catch (SQLException e) {
+            operationFailed(CrudOperation.FIND_PAGE, e);
+            throw new RuntimeException(e);
+        }
+        operationCompleted(CrudOperation.FIND_PAGE, start);
+        return page;
+    }
+
+    public void setFetchSize(int fetchSize) {
+        if (fetchSize < 1) throw new IllegalArgumentException("Fetch size must be at least 1.");
+        this.fetchSize = fetchSize;
+    }
+
     public long count() {
+        long start = startOperation();
         long count = 0;
-        try {
-            PreparedStatement ps = connection.prepareStatement(getSqlByAnnotation(CrudOperation.COUNT,
-                    this::getCountSql));
-            ResultSet rs = ps.executeQuery();
-            if (rs.next()) {
-                count = rs.getLong(1);
+        try (ConnectionLease lease = connections.borrow()) {
+            PreparedStatement ps = prepare(lease, CrudOperation.COUNT, this::getCountSql);
+            try (ResultSet rs = executeQuery(CrudOperation.COUNT, ps)) {
+                if (rs.next()) {
+                    count = rs.getLong(1);
+                }
             }
         } catch (SQLException e) {
+            operationFailed(CrudOperation.COUNT, e);
             throw new RuntimeException(e);
         }
+        operationCompleted(CrudOperation.COUNT, start);
         return count;
     }
 
     public void delete(T entity) {
-        try {
-            PreparedStatement ps = connection.prepareStatement(getSqlByAnnotation(CrudOperation.DELETE_ONE,
-                    this::getDeleteSql));
+        long start = startOperation();
+        try (ConnectionLease lease = connections.borrow()) {
+            PreparedStatement ps = prepare(lease, CrudOperation.DELETE_ONE, this::getDeleteSql);
             ps.setLong(1, getIdByAnnotation(entity));
-            int affectedRecordCount = ps.executeUpdate();
-            System.out.println(affectedRecordCount);
+            executeUpdate(CrudOperation.DELETE_ONE, ps);
         } catch (SQLException e) {
+            operationFailed(CrudOperation.DELETE_ONE, e);
             throw new RuntimeException(e);
         }
+        evictFromCache(entity);
+        operationCompleted(CrudOperation.DELETE_ONE, start);
     }
 
-    private void setIdByAnnotation (Long id, T entity) {
-        Arrays.stream(entity.getClass().getDeclaredFields())
-                .filter(f -> f.isAnnotationPresent(Id.class))
-                .forEach(f -> {
-                    f.setAccessible(true);
-                    try {
-                        f.set(entity, id);
-                    } catch (IllegalAccessException e) {
-                        throw new RuntimeException("Unable to set ID field value.");
-                    }
-                });
+    void setIdByAnnotation (Long id, T entity) {
+        metadata.setId(entity, id);
     }
 
     private Long getIdByAnnotation(T entity) {
-        return Arrays.stream(entity.getClass().getDeclaredFields())
-                .filter(f -> f.isAnnotationPresent(Id.class))
-                .map(f -> {
-                    f.setAccessible(true);
-                    Long id;
-                    try {
-                        id = (long)f.get(entity);
-                    } catch (IllegalAccessException e) {
-                        throw new RuntimeException(e);
-                    }
-                    return id;
-                })
-                .findFirst().orElseThrow(() -> new RuntimeException("No ID annotated field found"));
-    }
-
-    public void delete(T...entities) {
-        try {
-            Statement stmt = connection.createStatement();
-            String ids = Arrays.stream(entities).map(this::getIdByAnnotation).map(String::valueOf).collect(joining(","));
-            int affectedRecordCount = stmt.executeUpdate(getSqlByAnnotation(CrudOperation.DELETE_MANY,
-                    this::getDeleteInSql).replace(":ids",
-                    ids));
-            System.out.println(affectedRecordCount);
-        } catch (Exception e) {
+        return metadata.getId(entity);
+    }
+
+    /**
+     * Deletes the entities as in deleteAllById.
+     * @return The number of rows deleted.
+     */
+    public long delete(T...entities) {
+        long deleted = deleteInChunks(Arrays.stream(entities).map(this::getIdByAnnotation).toList(),
+                DEFAULT_DELETE_CHUNK_SIZE);
+        Arrays.stream(entities).forEach(this::evictFromCache);
+        return deleted;
+    }
+
+    public long deleteAllById(Collection<Long> ids) {
+        return deleteAllById(ids, DEFAULT_DELETE_CHUNK_SIZE);
+    }
+
+    /**
+     * Deletes the IDs chunkSize at a time, binding each chunk as one array parameter, so every chunk reuses the
+     * same prepared statement however many IDs there are. The chunks are only atomic together when the caller
+     * has a transaction open on the connection.
+     * @return The number of rows deleted.
+     */
+    public long deleteAllById(Collection<Long> ids, int chunkSize) {
+        if (chunkSize < 1) throw new IllegalArgumentException("Chunk size must be at least 1.");
+        List<Long> toDelete = List.copyOf(ids);
+        long deleted = deleteInChunks(toDelete, chunkSize);
+        if (cache != null) evictFromCache(cache, toDelete);
+        return deleted;
+    }
+
+    private long deleteInChunks(List<Long> ids, int chunkSize) {
+        if (ids.isEmpty()) return 0;
+        long start = startOperation();
+        long deleted = 0;
+        try (ConnectionLease lease = connections.borrow()) {
+            PreparedStatement ps = prepare(lease, CrudOperation.DELETE_MANY, this::getDeleteInSql);
+            for (int from = 0; from < ids.size(); from += chunkSize) {
+                List<Long> chunk = ids.subList(from, Math.min(from + chunkSize, ids.size()));
+                ps.setArray(1, lease.connection().createArrayOf("BIGINT", chunk.toArray()));
+                deleted += executeUpdate(CrudOperation.DELETE_MANY, ps);
+            }
+        } catch (SQLException e) {
+            operationFailed(CrudOperation.DELETE_MANY, e);
             throw new RuntimeException(e);
         }
+        operationCompleted(CrudOperation.DELETE_MANY, start);
+        return deleted;
     }
 
+    /**
+     * Writes the entity's row, or does nothing if {@link #hasChanges} says nothing changed since it was written.
+     */
     public void update(T entity) {
-        try {
-            PreparedStatement ps = connection.prepareStatement(getSqlByAnnotation(CrudOperation.UPDATE,
-                    this::getUpdateSql));
+        if (!hasChanges(entity)) return;
+        long start = startOperation();
+        try (ConnectionLease lease = connections.borrow()) {
+            PreparedStatement ps = prepare(lease, CrudOperation.UPDATE, () -> getUpdateSql(entity));
             mapForUpdate(entity, ps);
-            ps.setLong(5, getIdByAnnotation(entity));
-            ps.executeUpdate();
+            executeUpdate(CrudOperation.UPDATE, ps);
+        } catch (SQLException e) {
+            operationFailed(CrudOperation.UPDATE, e);
+            throw new RuntimeException(e);
+        }
+        evictFromCache(entity);
+        postUpdate(entity);
+        operationCompleted(CrudOperation.UPDATE, start);
+    }
+
+    public void updateAll(Collection<T> entities) {
+        updateAll(entities, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Updates the changed entities with JDBC batches of at most batchSize rows. Entities whose update SQL differs,
+     * e.g. because different fields changed, go in separate batches.
+     */
+    public void updateAll(Collection<T> entities, int batchSize) {
+        if (batchSize < 1) throw new IllegalArgumentException("Batch size must be at least 1.");
+        Map<String, List<T>> bySql = new LinkedHashMap<>();
+        for (T entity : entities) {
+            if (hasChanges(entity)) {
+                bySql.computeIfAbsent(getSqlByAnnotation(CrudOperation.UPDATE, () -> getUpdateSql(entity)),
+                        sql -> new ArrayList<>()).add(entity);
+            }
+        }
+        bySql.forEach((sql, group) -> {
+            for (int from = 0; from < group.size(); from += batchSize) {
+                updateBatch(sql, group.subList(from, Math.min(from + batchSize, group.size())));
+            }
+        });
+    }
+
+    private void updateBatch(String sql, List<T> batch) {
+        long start = startOperation();
+        try (ConnectionLease lease = connections.borrow()) {
+            PreparedStatement ps = prepare(lease, CrudOperation.UPDATE, () -> sql);
+            for (T entity : batch) {
+                mapForUpdate(entity, ps);
+                ps.addBatch();
+            }
+            executeBatch(CrudOperation.UPDATE, ps);
         } catch (SQLException e) {
+            operationFailed(CrudOperation.UPDATE, e);
             throw new RuntimeException(e);
         }
+        for (T entity : batch) {
+            evictFromCache(entity);
+            postUpdate(entity);
+        }
+        operationCompleted(CrudOperation.UPDATE, start);
+    }
+
+    /**
+     * Enables a read-through cache for findById and findByIds, or disables it when null.
+     * save, saveAll, update and delete evict the entities they write.
+     */
+    public void setCache(EntityCache<T> cache) {
+        this.cache = cache;
+    }
+
+    public EntityCache<T> getCache() {
+        return cache;
+    }
+
+    /**
+     * Reports timings, rows affected and errors to the listener, e.g. a {@link RepositoryMetrics}; null turns
+     * reporting off. A PeopleRepository's cascading address saves aren't reported, but are included in the
+     * person save's timing.
+     */
+    public void setListener(RepositoryListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Closes the statements cached on a connection the repository was given directly; that connection belongs to
+     * the caller and stays open. A shared ConnectionProvider is left alone.
+     */
+    @Override
+    public void close() {
+        if (ownedProvider != null) ownedProvider.close();
+    }
+
+    /**
+     * Gets the statement for an operation from the lease's statement cache, reporting the time to the listener.
+     */
+    protected PreparedStatement prepare(ConnectionLease lease, CrudOperation operationType, Supplier<String> sqlGetter)
+            throws SQLException {
+        return prepare(lease, operationType, sqlGetter, Statement.NO_GENERATED_KEYS);
+    }
+
+    private PreparedStatement prepare(ConnectionLease lease, CrudOperation operationType, Supplier<String> sqlGetter,
+                                      int autoGeneratedKeys) throws SQLException {
+        RepositoryListener l = listener;
+        if (l == null) {
+            return lease.statements().prepare(operationType, getSqlByAnnotation(operationType, sqlGetter),
+                    autoGeneratedKeys);
+        }
+        long start = System.nanoTime();
+        PreparedStatement ps = lease.statements().prepare(operationType, getSqlByAnnotation(operationType, sqlGetter),
+                autoGeneratedKeys);
+        l.statementPrepared(operationType, System.nanoTime() - start);
+        return ps;
+    }
+
+    protected int executeUpdate(CrudOperation operationType, PreparedStatement ps) throws SQLException {
+        long start = startOperation();
+        int rowsAffected = ps.executeUpdate();
+        statementExecuted(operationType, start, rowsAffected);
+        return rowsAffected;
+    }
+
+    private int[] executeBatch(CrudOperation operationType, PreparedStatement ps) throws SQLException {
+        long start = startOperation();
+        int[] rowsAffected = ps.executeBatch();
+        if (start != 0) {
+            statementExecuted(operationType, start, Arrays.stream(rowsAffected).filter(n -> n > 0).sum());
+        }
+        return rowsAffected;
+    }
+
+    protected ResultSet executeQuery(CrudOperation operationType, PreparedStatement ps) throws SQLException {
+        long start = startOperation();
+        ResultSet rs = ps.executeQuery();
+        statementExecuted(operationType, start, 0);
+        return rs;
+    }
+
+    /**
+     * @return The current time to measure from, or 0 when there is no listener so no clock is read.
+     */
+    private long startOperation() {
+        return listener == null ? 0 : System.nanoTime();
+    }
+
+    private void statementExecuted(CrudOperation operationType, long start, long rowsAffected) {
+        RepositoryListener l = listener;
+        if (l != null && start != 0) l.statementExecuted(operationType, System.nanoTime() - start, rowsAffected);
+    }
+
+    private void operationCompleted(CrudOperation operationType, long start) {
+        RepositoryListener l = listener;
+        if (l != null && start != 0) l.operationCompleted(operationType, System.nanoTime() - start);
+    }
+
+    private void operationFailed(CrudOperation operationType, Exception e) {
+        RepositoryListener l = listener;
+        if (l != null) l.operationFailed(operationType, e);
+    }
+
+    private static void closeQuietly(Statement statement) {
+        if (statement == null) return;
+        try {
+            statement.close();
+        } catch (SQLException ignored) {
+        }
     }
 
     private String getSqlByAnnotation(CrudOperation operationType, Supplier<String> sqlGetter) {
-        return Arrays.stream(this.getClass().getDeclaredMethods())
-                .filter(m -> m.isAnnotationPresent(SQL.class))
-                .map(m -> m.getAnnotation(SQL.class))
-                .filter(a -> a.operationType().equals(operationType))
-                .map(SQL::value)
-                .findFirst().orElseGet(sqlGetter);
+        String sql = metadata.sql(operationType);
+        return sql != null ? sql : sqlGetter.get();
     }
 
+    /**
+     * Called by saveAll before each batch is bound, so related rows the batch refers to can be saved first.
+     */
+    protected void preSaveAll(List<T> batch) {}
+
     protected void postSave(T entity, long id) {}
 
+    /**
+     * Binds a query's parameters.
+     */
+    @FunctionalInterface
+    protected interface StatementBinder {
+        void bind(PreparedStatement ps) throws SQLException;
+    }
+
+    /**
+     * Reads a query's result set.
+     */
+    @FunctionalInterface
+    protected interface ResultReader<R> {
+        R read(ResultSet rs) throws SQLException;
+    }
+
+    /**
+     * Lets update and updateAll skip entities that haven't changed since they were written.
+     */
+    protected boolean hasChanges(T entity) {
+        return true;
+    }
+
+    /**
+     * Called after the entity's update is executed.
+     */
+    protected void postUpdate(T entity) {}
+
+    /**
+     * Called by findById and findByIds, on the same connection, with the entities they found and before they are
+     * cached, so associations the main query didn't load can be filled in.
+     */
+    protected void postLoad(ConnectionLease lease, Collection<T> entities) throws SQLException {}
+
+    /**
+     * Called with each entity loaded from the database before it is cached; may return a replacement to cache.
+     */
+    protected T prepareForCache(T entity) {
+        return entity;
+    }
+
+    /**
+     * Called with each entity a find returns from the cache, or has just cached, so callers get an instance they can
+     * change without changing what later finds return. Immutable entities can be returned as they are.
+     */
+    protected T copyCached(T cached) {
+        return cached;
+    }
+
+    /**
+     * Evicts the entity from the cache after it has been written, along with any cached entities it appears in.
+     */
+    protected void evictFromCache(EntityCache<T> cache, T entity) {
+        Long id = getIdByAnnotation(entity);
+        if (id != null) cache.invalidate(id);
+    }
+
+    /**
+     * Evicts entities deleted by ID, along with any cached entities they appear in.
+     */
+    protected void evictFromCache(EntityCache<T> cache, Collection<Long> ids) {
+        ids.forEach(cache::invalidate);
+    }
+
+    private void evictFromCache(T entity) {
+        if (cache != null) evictFromCache(cache, entity);
+    }
+
     protected String getUpdateSql() {throw new RuntimeException("SQL not defined.");}
 
     /**
-     *
-     * @return Should return SQL String like "DELETE FROM PEOPLE WHERE ID IN (:ids)"
-     * Be sure to include the "(:ids)" named parameter and call it "ids"
+     * @return The update SQL for this entity, for repositories that only write the columns that changed.
+     * mapForUpdate must bind the entity's ID as well as the columns.
+     */
+    protected String getUpdateSql(T entity) {return getUpdateSql();}
+
+    /**
+     * @return SQL like getDeleteSql() whose one parameter is an array of IDs, e.g. "WHERE ID = ANY(?)".
      */
     protected String getDeleteInSql() {throw new RuntimeException("SQL not defined.");}
 
@@ -175,8 +693,44 @@ abstract class CRUDRepository <T> {
      * The SQL must contain one SQL parameter, i.e. "?", that will bind to the entity's ID.
      */
     protected String getFindByIdSql() {return "";}
+
+    /**
+     * @return SQL like getFindByIdSql() whose one parameter is an array of IDs, e.g. "WHERE ID = ANY(?)".
+     */
+    protected String getFindByIdsSql() {throw new RuntimeException("SQL not defined.");}
+
+    /**
+     * @return SQL selecting every entity, one row per entity, ordered by ID.
+     */
+    protected String getFindAllSql() {throw new RuntimeException("SQL not defined.");}
+
+    /**
+     * @return SQL like getFindAllSql() restricted to "ID > ?" and capped with "LIMIT ?", in that parameter order.
+     */
+    protected String getFindPageSql() {throw new RuntimeException("SQL not defined.");}
+
     abstract T extractEntityFromResultsSet(ResultSet rs) throws SQLException;
 
+    /**
+     * Maps the current row of a findAll result to an entity without moving the cursor.
+     * Defaults to extractEntityFromResultsSet, which suits entities that are read from a single row.
+     */
+    T extractEntityFromRow(ResultSet rs) throws SQLException {
+        return extractEntityFromResultsSet(rs);
+    }
+
+    /**
+     * Maps every row of a findByIds result, keyed by ID. Defaults to one entity per row via extractEntityFromRow.
+     */
+    Map<Long, T> extractEntitiesFromResultSet(ResultSet rs) throws SQLException {
+        Map<Long, T> entities = new LinkedHashMap<>();
+        while (rs.next()) {
+            T entity = extractEntityFromRow(rs);
+            entities.put(getIdByAnnotation(entity), entity);
+        }
+        return entities;
+    }
+
     abstract void mapForUpdate(T entity, PreparedStatement ps) throws SQLException;
 
     abstract void mapForSave(T entity, PreparedStatement ps) throws SQLException;
@@ -0,0 +1,37 @@
+package com.mcgann.peopledb.repository;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * The indexes of a fixed list of column labels in one query's result sets. Labels are looked up on the first row
+ * mapped and the indexes reused for every later row and execution, so an instance must only ever be used with
+ * result sets of the one select list it was first resolved against.
+ */
+final class ColumnIndexes {
+    private final String[] labels;
+    private volatile int[] indexes;
+
+    ColumnIndexes(String... labels) {
+        this.labels = labels.clone();
+    }
+
+    int[] resolve(ResultSet rs) throws SQLException {
+        int[] resolved = indexes;
+        if (resolved == null) {
+            resolved = new int[labels.length];
+            for (int i = 0; i < labels.length; i++) {
+                resolved[i] = rs.findColumn(labels[i]);
+            }
+            indexes = resolved;
+        }
+        return resolved;
+    }
+
+    /**
+     * Shortcut for single-column instances.
+     */
+    int first(ResultSet rs) throws SQLException {
+        return resolve(rs)[0];
+    }
+}
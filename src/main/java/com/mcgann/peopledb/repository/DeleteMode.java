@@ -0,0 +1,16 @@
+package com.mcgann.peopledb.repository;
+
+/**
+ * What PeopleRepository deletes along with a person.
+ */
+public enum DeleteMode {
+    /**
+     * Only the person's row. Deleting a person who still has children or a spouse pointing at them fails.
+     */
+    PERSON_ONLY,
+    /**
+     * The person and all their descendants, found with one recursive query, then the addresses no one else refers
+     * to any more. Spouses outside the subtree are left unmarried. Runs in one transaction.
+     */
+    CASCADE
+}
@@ -0,0 +1,17 @@
+package com.mcgann.peopledb.repository;
+
+/**
+ * How PeopleRepository loads a person's children along with the person.
+ */
+public enum FetchStrategy {
+    /**
+     * One query joining the person, both addresses and the children. A person with n children comes back as n rows,
+     * each repeating the person and address columns.
+     */
+    JOINED,
+    /**
+     * One query for the people with their addresses, then one query for the children of all of them. Every row is
+     * read once, at the cost of a second round trip.
+     */
+    SEPARATE_CHILDREN
+}
@@ -0,0 +1,151 @@
+package com.mcgann.peopledb.repository;
+
+import com.mcgann.peopledb.model.Address;
+import com.mcgann.peopledb.model.Person;
+import com.mcgann.peopledb.model.Region;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Optional;
+
+import static com.mcgann.peopledb.repository.PeopleSnapshot.*;
+import static com.mcgann.peopledb.repository.SnapshotFile.*;
+
+/**
+ * A {@link PeopleSnapshot} read in place from a file mapped by {@link SnapshotFile#open}. Nothing is copied onto the
+ * heap when it opens: lookups binary search the ID column in the file and read the person's fields from there.
+ * <p>
+ * To catch up after starting from a file, page through the people written since with
+ * {@code repository.findAll(snapshot.maxId(), limit)}. Updates and deletes of older people aren't in the file.
+ * A mapped snapshot can be shared between threads.
+ */
+public final class MappedSnapshot {
+    private static final ZoneId DOB_ZONE = ZoneId.of("+0");
+    private static final Region[] REGIONS = Region.values();
+
+    private final ByteBuffer buffer;
+    private final int size;
+    private final int addressCount;
+    private final int salaryScale;
+    private final long maxId;
+    private final int[] sections = new int[SECTIONS];
+
+    MappedSnapshot(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.size = buffer.getInt(8);
+        this.addressCount = buffer.getInt(12);
+        this.salaryScale = buffer.getInt(16);
+        this.maxId = buffer.getLong(20);
+        for (int section = 0; section < SECTIONS; section++) {
+            sections[section] = (int) buffer.getLong(SECTIONS_AT + section * Long.BYTES);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int addressCount() {
+        return addressCount;
+    }
+
+    /**
+     * @return The highest person ID in the file, or 0 if it holds no one.
+     */
+    public long maxId() {
+        return maxId;
+    }
+
+    public boolean contains(long id) {
+        return search(IDS, size, id) != NO_ROW;
+    }
+
+    /**
+     * Builds the person with their addresses and children, as {@link PeopleSnapshot#findById} does.
+     */
+    public Optional<Person> findById(long id) {
+        int row = search(IDS, size, id);
+        if (row == NO_ROW) return Optional.empty();
+        Person person = person(row);
+        person.setHomeAddress(address(getInt(HOME_ADDRESSES, row)));
+        person.setBusinessAddress(address(getInt(BUSINESS_ADDRESSES, row)));
+        long spouseId = getLong(SPOUSE_IDS, row);
+        if (spouseId != NO_VALUE) person.setSpouseId(spouseId);
+        for (int child = getInt(CHILD_OFFSETS, row); child < getInt(CHILD_OFFSETS, row + 1); child++) {
+            person.addChild(person(getInt(CHILD_ROWS, child)));
+        }
+        person.markClean();
+        return Optional.of(person);
+    }
+
+    public Optional<Address> findAddressById(long id) {
+        return Optional.ofNullable(address(search(ADDRESS_IDS, addressCount, id)));
+    }
+
+    private Person person(int row) {
+        long dob = getLong(DOBS, row);
+        Person person = new Person(string(NAME_STRINGS, getInt(FIRST_NAMES, row)),
+                string(NAME_STRINGS, getInt(LAST_NAMES, row)),
+                dob == NO_VALUE ? null : ZonedDateTime.ofInstant(Instant.ofEpochMilli(dob), DOB_ZONE));
+        person.setId(getLong(IDS, row));
+        long salary = getLong(SALARIES, row);
+        person.setSalary(salary == NO_VALUE ? null : BigDecimal.valueOf(salary, salaryScale));
+        person.setEmail(string(EMAIL_STRINGS, getInt(EMAILS, row)));
+        person.markClean();
+        return person;
+    }
+
+    private Address address(int row) {
+        if (row == NO_ROW) return null;
+        byte region = buffer.get(sections[ADDRESS_REGIONS] + row);
+        return new Address(getLong(ADDRESS_IDS, row), addressString(STREET_ADDRESS, row),
+                addressString(ADDRESS2, row), addressString(CITY, row), addressString(STATE, row),
+                addressString(POSTCODE, row), addressString(COUNTRY, row), addressString(COUNTY, row),
+                region == NO_ROW ? null : REGIONS[region]);
+    }
+
+    // The address string columns are stored one after another.
+    private String addressString(int column, int row) {
+        int code = buffer.getInt(sections[ADDRESS_COLUMNS] + (column * addressCount + row) * Integer.BYTES);
+        return string(ADDRESS_STRINGS, code);
+    }
+
+    /**
+     * @return The row of the ID in a sorted ID column, or NO_ROW.
+     */
+    private int search(int section, int rows, long id) {
+        int low = 0;
+        int high = rows - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long found = getLong(section, middle);
+            if (found < id) low = middle + 1;
+            else if (found > id) high = middle - 1;
+            else return middle;
+        }
+        return NO_ROW;
+    }
+
+    private int getInt(int section, int row) {
+        return buffer.getInt(sections[section] + row * Integer.BYTES);
+    }
+
+    private long getLong(int section, int row) {
+        return buffer.getLong(sections[section] + row * Long.BYTES);
+    }
+
+    private String string(int section, int code) {
+        if (code == StringDictionary.NULL) return null;
+        int table = sections[section];
+        int bytesAt = table + Integer.BYTES * (buffer.getInt(table) + 2);
+        int start = buffer.getInt(table + Integer.BYTES * (code + 1));
+        int end = buffer.getInt(table + Integer.BYTES * (code + 2));
+        byte[] bytes = new byte[end - start];
+        buffer.get(bytesAt + start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -1,16 +1,40 @@
 package com.mcgann.peopledb.repository;
 
 import com.mcgann.peopledb.annotation.SQL;
+import com.mcgann.peopledb.cache.EntityCache;
+import com.mcgann.peopledb.connection.ConnectionLease;
+import com.mcgann.peopledb.connection.ConnectionProvider;
+import com.mcgann.peopledb.exception.UnableToSaveException;
+import com.mcgann.peopledb.metrics.GenerationStats;
 import com.mcgann.peopledb.model.Address;
 import com.mcgann.peopledb.model.CrudOperation;
 import com.mcgann.peopledb.model.Person;
+import com.mcgann.peopledb.model.PersonField;
 import com.mcgann.peopledb.model.Region;
+import com.mcgann.peopledb.model.SalaryStats;
 
-import java.math.BigDecimal;
 import java.sql.*;
+import java.time.Duration;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 
 public class PeopleRepository extends CRUDRepository<Person> {
@@ -19,7 +43,7 @@ public class PeopleRepository extends CRUDRepository<Person> {
         INSERT INTO PEOPLE
         (FIRST_NAME, LAST_NAME, DOB, SALARY, EMAIL, HOME_ADDRESS, BUSINESS_ADDRESS, SPOUSE, PARENT_ID)
         VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)""";
-    public static final String FIND_BY_ID_SQL = """
+    public static final String SELECT_FAMILY_SQL = """
             SELECT
             PARENT.ID AS PARENT_ID, PARENT.FIRST_NAME AS PARENT_FIRST_NAME, PARENT.LAST_NAME AS PARENT_LAST_NAME,
             PARENT.DOB AS PARENT_DOB, PARENT.SALARY AS PARENT_SALARY, PARENT.EMAIL AS PARENT_EMAIL,
@@ -44,17 +68,167 @@ public class PeopleRepository extends CRUDRepository<Person> {
             LEFT OUTER JOIN ADDRESSES AS HOME ON PARENT.HOME_ADDRESS = HOME.ID
             LEFT OUTER JOIN ADDRESSES AS BUSINESS ON PARENT.BUSINESS_ADDRESS = BUSINESS.ID
             
-            WHERE PARENT.ID = ?
+            """;
+    public static final String FIND_BY_ID_SQL = SELECT_FAMILY_SQL + "WHERE PARENT.ID = ?";
+    public static final String FIND_BY_IDS_SQL = SELECT_FAMILY_SQL + "WHERE PARENT.ID = ANY(?)";
+    public static final String PEOPLE_WITH_ADDRESSES_COLUMNS_SQL = """
+            SELECT
+            PERSON.ID AS PERSON_ID, PERSON.FIRST_NAME AS PERSON_FIRST_NAME, PERSON.LAST_NAME AS PERSON_LAST_NAME,
+            PERSON.DOB AS PERSON_DOB, PERSON.SALARY AS PERSON_SALARY, PERSON.EMAIL AS PERSON_EMAIL,
+            PERSON.SPOUSE AS SPOUSE,
+            
+            HOME.ID AS HOME_ID, HOME.STREET_ADDRESS AS HOME_STREET_ADDRESS, HOME.ADDRESS2 AS HOME_ADDRESS2,
+            HOME.STATE AS HOME_STATE,
+            HOME.CITY AS HOME_CITY, HOME.POSTCODE AS HOME_POSTCODE, HOME.COUNTY AS HOME_COUNTY,
+            HOME.REGION AS HOME_REGION, HOME.COUNTRY AS HOME_COUNTRY,
+            
+            BUSINESS.ID AS BUSINESS_ID, BUSINESS.STREET_ADDRESS AS BUSINESS_STREET_ADDRESS,
+            BUSINESS.ADDRESS2 AS BUSINESS_ADDRESS2, BUSINESS.STATE AS BUSINESS_STATE,
+            BUSINESS.CITY AS BUSINESS_CITY, BUSINESS.POSTCODE AS BUSINESS_POSTCODE, BUSINESS.COUNTY AS BUSINESS_COUNTY,
+            BUSINESS.REGION AS BUSINESS_REGION, BUSINESS.COUNTRY AS BUSINESS_COUNTRY
+            
+            """;
+    public static final String SELECT_PEOPLE_WITH_ADDRESSES_SQL = PEOPLE_WITH_ADDRESSES_COLUMNS_SQL + """
+            FROM PEOPLE AS PERSON
+            
+            LEFT OUTER JOIN ADDRESSES AS HOME ON PERSON.HOME_ADDRESS = HOME.ID
+            LEFT OUTER JOIN ADDRESSES AS BUSINESS ON PERSON.BUSINESS_ADDRESS = BUSINESS.ID
+            """;
+    // Starts from the home address, so a region or city filter can use ADDRESSES_REGION_CITY_IX.
+    public static final String SELECT_PEOPLE_BY_HOME_SQL = PEOPLE_WITH_ADDRESSES_COLUMNS_SQL + """
+            FROM ADDRESSES AS HOME
+            
+            INNER JOIN PEOPLE AS PERSON ON PERSON.HOME_ADDRESS = HOME.ID
+            LEFT OUTER JOIN ADDRESSES AS BUSINESS ON PERSON.BUSINESS_ADDRESS = BUSINESS.ID
+            """;
+    public static final String FIND_PERSON_BY_ID_SQL = SELECT_PEOPLE_WITH_ADDRESSES_SQL + "WHERE PERSON.ID = ?";
+    public static final String FIND_PEOPLE_BY_IDS_SQL = SELECT_PEOPLE_WITH_ADDRESSES_SQL + "WHERE PERSON.ID = ANY(?)";
+    public static final String FIND_CHILDREN_SQL = """
+            SELECT
+            CHILD.PARENT_ID AS PARENT_ID,
+            CHILD.ID AS CHILD_ID, CHILD.FIRST_NAME AS CHILD_FIRST_NAME, CHILD.LAST_NAME AS CHILD_LAST_NAME,
+            CHILD.DOB AS CHILD_DOB, CHILD.SALARY AS CHILD_SALARY, CHILD.EMAIL AS CHILD_EMAIL
+            FROM PEOPLE AS CHILD
+            WHERE CHILD.PARENT_ID = ANY(?)
+            """;
+    public static final String FIND_ALL_SQL = SELECT_PEOPLE_WITH_ADDRESSES_SQL + "ORDER BY PERSON.ID";
+    public static final String FIND_PAGE_SQL = SELECT_PEOPLE_WITH_ADDRESSES_SQL +
+            "WHERE PERSON.ID > ? ORDER BY PERSON.ID LIMIT ?";
+    public static final String FIND_BY_EMAIL_SQL = SELECT_PEOPLE_WITH_ADDRESSES_SQL + "WHERE PERSON.EMAIL = ?";
+    public static final String FIND_BY_LAST_NAME_PREFIX_SQL = SELECT_PEOPLE_WITH_ADDRESSES_SQL +
+            "WHERE PERSON.LAST_NAME LIKE ? ESCAPE '\\'";
+    public static final String FIND_BY_HOME_REGION_SQL = SELECT_PEOPLE_BY_HOME_SQL + "WHERE HOME.REGION = ?";
+    public static final String FIND_BY_HOME_CITY_SQL = SELECT_PEOPLE_BY_HOME_SQL +
+            "WHERE HOME.REGION = ? AND HOME.CITY = ?";
+    public static final String SALARY_STATS_SQL =
+            "SELECT COUNT(SALARY), SUM(SALARY), AVG(SALARY), MIN(SALARY), MAX(SALARY) FROM PEOPLE";
+    public static final String COUNT_BY_HOME_REGION_SQL = """
+            SELECT HOME.REGION, COUNT(*)
+            FROM PEOPLE AS PERSON INNER JOIN ADDRESSES AS HOME ON PERSON.HOME_ADDRESS = HOME.ID
+            GROUP BY HOME.REGION
+            """;
+    public static final String COUNT_BY_HOME_CITY_SQL = """
+            SELECT HOME.CITY, COUNT(*)
+            FROM PEOPLE AS PERSON INNER JOIN ADDRESSES AS HOME ON PERSON.HOME_ADDRESS = HOME.ID
+            WHERE HOME.REGION = ?
+            GROUP BY HOME.CITY ORDER BY HOME.CITY
+            """;
+    public static final String COUNT_BY_BIRTH_DECADE_SQL = """
+            SELECT DECADE, COUNT(*)
+            FROM (SELECT EXTRACT(YEAR FROM DOB) / 10 * 10 AS DECADE FROM PEOPLE WHERE DOB IS NOT NULL)
+            GROUP BY DECADE ORDER BY DECADE
+            """;
+    public static final String COUNT_CHILDREN_PER_PARENT_SQL = """
+            SELECT CHILDREN, COUNT(*)
+            FROM (SELECT COUNT(*) AS CHILDREN FROM PEOPLE WHERE PARENT_ID IS NOT NULL GROUP BY PARENT_ID)
+            GROUP BY CHILDREN ORDER BY CHILDREN
+            """;
+    public static final String EXPORT_SQL = """
+            SELECT
+            PERSON.ID, PERSON.FIRST_NAME, PERSON.LAST_NAME, PERSON.DOB, PERSON.SALARY, PERSON.EMAIL,
+            PERSON.PARENT_ID, PERSON.SPOUSE AS SPOUSE_ID,
+            HOME.STREET_ADDRESS AS HOME_STREET_ADDRESS, HOME.ADDRESS2 AS HOME_ADDRESS2, HOME.CITY AS HOME_CITY,
+            HOME.STATE AS HOME_STATE, HOME.POSTCODE AS HOME_POSTCODE, HOME.COUNTRY AS HOME_COUNTRY,
+            HOME.COUNTY AS HOME_COUNTY, HOME.REGION AS HOME_REGION,
+            BUSINESS.STREET_ADDRESS AS BUSINESS_STREET_ADDRESS, BUSINESS.ADDRESS2 AS BUSINESS_ADDRESS2,
+            BUSINESS.CITY AS BUSINESS_CITY, BUSINESS.STATE AS BUSINESS_STATE, BUSINESS.POSTCODE AS BUSINESS_POSTCODE,
+            BUSINESS.COUNTRY AS BUSINESS_COUNTRY, BUSINESS.COUNTY AS BUSINESS_COUNTY,
+            BUSINESS.REGION AS BUSINESS_REGION
+            FROM PEOPLE AS PERSON
+            LEFT OUTER JOIN ADDRESSES AS HOME ON PERSON.HOME_ADDRESS = HOME.ID
+            LEFT OUTER JOIN ADDRESSES AS BUSINESS ON PERSON.BUSINESS_ADDRESS = BUSINESS.ID
+            ORDER BY PERSON.ID
             """;
     public static final String SQL_COUNT_ALL = "SELECT COUNT(*) FROM PEOPLE";
     public static final String DELETE_SQL = "DELETE FROM PEOPLE WHERE ID=?";
-    public static final String DELETE_IN_SQL = "DELETE FROM PEOPLE WHERE ID IN (:ids)";
-    public static final String UPDATE_SQL = "UPDATE PEOPLE SET FIRST_NAME=?, LAST_NAME=?, DOB=?," +
-            " SALARY=? WHERE ID=?";
+    public static final String DELETE_IN_SQL = "DELETE FROM PEOPLE WHERE ID = ANY(?)";
+    public static final String FIND_SUBTREE_SQL = """
+            WITH RECURSIVE SUBTREE(ID, DEPTH) AS (
+                SELECT ID, 0 FROM PEOPLE WHERE ID = ANY(?)
+                UNION ALL
+                SELECT CHILD.ID, SUBTREE.DEPTH + 1
+                FROM PEOPLE AS CHILD INNER JOIN SUBTREE ON CHILD.PARENT_ID = SUBTREE.ID
+            )
+            SELECT PERSON.ID, SUBTREE.DEPTH, PERSON.HOME_ADDRESS, PERSON.BUSINESS_ADDRESS
+            FROM SUBTREE INNER JOIN PEOPLE AS PERSON ON PERSON.ID = SUBTREE.ID
+            """;
+    public static final String CLEAR_SPOUSES_SQL = "UPDATE PEOPLE SET SPOUSE = NULL WHERE SPOUSE = ANY(?)";
+    public static final String FIND_ADDRESS_REFERENCES_SQL = """
+            SELECT HOME_ADDRESS, BUSINESS_ADDRESS FROM PEOPLE
+            WHERE HOME_ADDRESS = ANY(?) OR BUSINESS_ADDRESS = ANY(?)
+            """;
+    public static final String UPDATE_SQL = "UPDATE PEOPLE SET FIRST_NAME=?, LAST_NAME=?, DOB=?, SALARY=?," +
+            " EMAIL=?, HOME_ADDRESS=?, BUSINESS_ADDRESS=?, SPOUSE=? WHERE ID=?";
+
+    // Row mappers resolve their columns once per select list, so each select list gets its own.
+    private static final PersonRowMapper FAMILY_PARENT = new PersonRowMapper("PARENT_");
+    private static final PersonRowMapper FAMILY_CHILD = new PersonRowMapper("CHILD_");
+    private static final AddressRowMapper FAMILY_HOME = new AddressRowMapper("HOME_");
+    private static final AddressRowMapper FAMILY_BUSINESS = new AddressRowMapper("BUSINESS_");
+    private static final ColumnIndexes FAMILY_KEYS = new ColumnIndexes("PARENT_ID", "SPOUSE");
+    private static final PersonRowMapper PERSON = new PersonRowMapper("PERSON_");
+    private static final AddressRowMapper PERSON_HOME = new AddressRowMapper("HOME_");
+    private static final AddressRowMapper PERSON_BUSINESS = new AddressRowMapper("BUSINESS_");
+    private static final ColumnIndexes PERSON_SPOUSE = new ColumnIndexes("SPOUSE");
+    private static final PersonRowMapper CHILDREN_CHILD = new PersonRowMapper("CHILD_");
+    private static final ColumnIndexes CHILDREN_PARENT_ID = new ColumnIndexes("PARENT_ID");
+
+    private static final Map<PersonField, String> COLUMNS = new EnumMap<>(Map.of(
+            PersonField.FIRST_NAME, "FIRST_NAME", PersonField.LAST_NAME, "LAST_NAME", PersonField.DOB, "DOB",
+            PersonField.SALARY, "SALARY", PersonField.EMAIL, "EMAIL", PersonField.HOME_ADDRESS, "HOME_ADDRESS",
+            PersonField.BUSINESS_ADDRESS, "BUSINESS_ADDRESS", PersonField.SPOUSE, "SPOUSE"));
+    // Update SQL for each combination of changed fields, indexed by a bit per field ordinal. Built up front, as the
+    // array is shared by every repository and thread.
+    private static final String[] UPDATE_SQL_BY_FIELDS = new String[1 << PersonField.values().length];
+
+    static {
+        PersonField[] fields = PersonField.values();
+        for (int mask = 1; mask < UPDATE_SQL_BY_FIELDS.length; mask++) {
+            int m = mask;
+            UPDATE_SQL_BY_FIELDS[mask] = Arrays.stream(fields)
+                    .filter(field -> (m & 1 << field.ordinal()) != 0)
+                    .map(field -> COLUMNS.get(field) + "=?")
+                    .collect(Collectors.joining(", ", "UPDATE PEOPLE SET ", " WHERE ID=?"));
+        }
+    }
+
+    private volatile EntityCache<Address> sharedAddresses;
+    private volatile FetchStrategy fetchStrategy = FetchStrategy.JOINED;
+    private volatile DeleteMode deleteMode = DeleteMode.PERSON_ONLY;
 
     public PeopleRepository(Connection connection) {
         super(connection);
-        addressRepository = new AddressRepository(connection);
+        addressRepository = new AddressRepository(connections);
+    }
+
+    public PeopleRepository(Connection connection, int statementCacheSize) {
+        super(connection, statementCacheSize);
+        addressRepository = new AddressRepository(connections);
+    }
+
+    public PeopleRepository(ConnectionProvider connections) {
+        super(connections);
+        addressRepository = new AddressRepository(connections);
     }
 
     @Override
@@ -79,10 +253,85 @@ public class PeopleRepository extends CRUDRepository<Person> {
         else { ps.setObject(9, null); }
     }
 
+    /**
+     * Saves the person and then their unsaved descendants, as in {@link #saveTree}.
+     */
+    @Override
+    public Person save(Person person) throws UnableToSaveException {
+        super.save(person);
+        saveDescendants(List.of(person), DEFAULT_BATCH_SIZE, null);
+        return person;
+    }
+
+    /**
+     * Saves the people and then their unsaved descendants, as in {@link #saveTree}.
+     */
+    @Override
+    public List<Person> saveAll(Collection<Person> people, int batchSize) throws UnableToSaveException {
+        List<Person> saved = super.saveAll(people, batchSize);
+        saveDescendants(saved, batchSize, null);
+        return saved;
+    }
+
+    public List<GenerationStats> saveTree(Collection<Person> roots) throws UnableToSaveException {
+        return saveTree(roots, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Saves the unsaved roots and their unsaved descendants breadth-first, one generation at a time. Each
+     * generation is inserted with JDBC batches of at most batchSize rows, after the previous generation's IDs are
+     * known, so every child is bound with its parent's generated ID.
+     * @return How long each generation took, starting with the roots as generation 0.
+     */
+    public List<GenerationStats> saveTree(Collection<Person> roots, int batchSize) throws UnableToSaveException {
+        List<GenerationStats> generations = new ArrayList<>();
+        List<Person> unsavedRoots = roots.stream().filter(person -> person.getId() == null).toList();
+        long start = System.nanoTime();
+        super.saveAll(unsavedRoots, batchSize);
+        generations.add(new GenerationStats(0, unsavedRoots.size(), Duration.ofNanos(System.nanoTime() - start)));
+        saveDescendants(roots, batchSize, generations);
+        return generations;
+    }
+
+    private void saveDescendants(Collection<Person> parents, int batchSize, List<GenerationStats> generations) {
+        List<Person> generation = unsavedChildren(parents);
+        for (int depth = 1; !generation.isEmpty(); depth++) {
+            long start = System.nanoTime();
+            super.saveAll(generation, batchSize);
+            if (generations != null) {
+                generations.add(new GenerationStats(depth, generation.size(),
+                        Duration.ofNanos(System.nanoTime() - start)));
+            }
+            generation = unsavedChildren(generation);
+        }
+    }
+
+    private static List<Person> unsavedChildren(Collection<Person> parents) {
+        return parents.stream()
+                .flatMap(parent -> parent.getChildren().stream())
+                .filter(child -> child.getId() == null)
+                .toList();
+    }
+
     @Override
     protected void postSave(Person entity, long id) {
-        entity.getChildren().stream()
-                .forEach(this::save);
+        entity.markClean();
+    }
+
+    /**
+     * Saves the batch's unsaved home and business addresses as one address batch, so every address already has its ID
+     * when the people are bound. An address instance shared by several people is only inserted once.
+     */
+    @Override
+    protected void preSaveAll(List<Person> batch) {
+        Set<Address> unsavedAddresses = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Person person : batch) {
+            person.getHomeAddress().filter(a -> a.id() == null).ifPresent(unsavedAddresses::add);
+            person.getBusinessAddress().filter(a -> a.id() == null).ifPresent(unsavedAddresses::add);
+        }
+        if (!unsavedAddresses.isEmpty()) {
+            addressRepository.saveAll(unsavedAddresses, unsavedAddresses.size());
+        }
     }
 
     private void associateSpouseWithPerson(PreparedStatement ps, Optional<Long> spouseId, int parameterIndex) throws SQLException {
@@ -103,69 +352,428 @@ public class PeopleRepository extends CRUDRepository<Person> {
         }
     }
 
+    /**
+     * Binds the fields changed since the person was last written, in the order getUpdateSql(Person) lists them,
+     * then the ID. Unsaved addresses are saved first.
+     */
     @Override
-    @SQL(value = UPDATE_SQL, operationType = CrudOperation.UPDATE)
     void mapForUpdate(Person entity, PreparedStatement ps) throws SQLException {
-        ps.setString(1, entity.getFirstName());
-        ps.setString(2, entity.getLastName());
-        ps.setTimestamp(3, convertDobToTimeStamp(entity.getDob()));
-        ps.setBigDecimal(4, entity.getSalary());
+        int parameterIndex = 1;
+        for (PersonField field : entity.getChangedFields()) {
+            switch (field) {
+                case FIRST_NAME -> ps.setString(parameterIndex, entity.getFirstName());
+                case LAST_NAME -> ps.setString(parameterIndex, entity.getLastName());
+                case DOB -> ps.setTimestamp(parameterIndex, convertDobToTimeStamp(entity.getDob()));
+                case SALARY -> ps.setBigDecimal(parameterIndex, entity.getSalary());
+                case EMAIL -> ps.setString(parameterIndex, entity.getEmail());
+                case HOME_ADDRESS -> associateAddressWithPerson(ps, entity.getHomeAddress(), parameterIndex);
+                case BUSINESS_ADDRESS -> associateAddressWithPerson(ps, entity.getBusinessAddress(), parameterIndex);
+                case SPOUSE -> associateSpouseWithPerson(ps, entity.getSpouseId(), parameterIndex);
+            }
+            parameterIndex++;
+        }
+        ps.setLong(parameterIndex, entity.getId());
     }
 
+    /**
+     * @return SQL setting only the person's changed columns; UPDATE_SQL when all of them changed.
+     */
     @Override
-    @SQL(value = FIND_BY_ID_SQL, operationType = CrudOperation.FIND_BY_ID)
-    Person extractEntityFromResultsSet(ResultSet rs) throws SQLException{
-        Person parent = extractPerson(rs, "PARENT_");
-        Address homeAddress = extractAddress(rs, "HOME_");
-        Address businessAddress = extractAddress(rs, "BUSINESS_");
-        long spouseId = rs.getLong("SPOUSE");
+    protected String getUpdateSql(Person person) {
+        int fields = 0;
+        for (PersonField field : person.getChangedFields()) {
+            fields |= 1 << field.ordinal();
+        }
+        return UPDATE_SQL_BY_FIELDS[fields];
+    }
 
-        parent.setHomeAddress(homeAddress);
-        parent.setBusinessAddress(businessAddress);
-        parent.setSpouseId(spouseId);
+    @Override
+    protected boolean hasChanges(Person person) {
+        return person.hasChanges();
+    }
 
-        do {
-            rs.getLong("CHILD_ID");
-            if (!rs.wasNull()) {
-                Person foundChild = extractPerson(rs, "CHILD_");
-                parent.addChild(foundChild);
+    @Override
+    protected void postUpdate(Person person) {
+        person.markClean();
+    }
+
+    /**
+     * Finders stream like findAll(), so close the stream, e.g. with try-with-resources. People come back without
+     * children; see {@link #loadChildren}.
+     */
+    public Stream<Person> findByEmail(String email) {
+        return streamQuery(CrudOperation.FIND_BY_EMAIL, ps -> ps.setString(1, email));
+    }
+
+    /**
+     * @param prefix Matched literally: % and _ are not wildcards.
+     */
+    public Stream<Person> findByLastNameStartingWith(String prefix) {
+        String pattern = prefix.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+        return streamQuery(CrudOperation.FIND_BY_LAST_NAME, ps -> ps.setString(1, pattern));
+    }
+
+    public Stream<Person> findByHomeRegion(Region region) {
+        return streamQuery(CrudOperation.FIND_BY_HOME_REGION, ps -> ps.setString(1, region.name()));
+    }
+
+    public Stream<Person> findByHomeCity(Region region, String city) {
+        return streamQuery(CrudOperation.FIND_BY_HOME_CITY, ps -> {
+            ps.setString(1, region.name());
+            ps.setString(2, city);
+        });
+    }
+
+    /**
+     * The aggregates run as one SQL query each, so no people are loaded to compute them.
+     */
+    @SQL(value = SALARY_STATS_SQL, operationType = CrudOperation.SALARY_STATS)
+    public SalaryStats salaryStats() {
+        return query(CrudOperation.SALARY_STATS, ps -> {}, rs -> {
+            rs.next();
+            return new SalaryStats(rs.getLong(1), rs.getBigDecimal(2), rs.getBigDecimal(3), rs.getBigDecimal(4),
+                    rs.getBigDecimal(5));
+        });
+    }
+
+    /**
+     * @return How many people live in each region. People without a home address aren't counted.
+     */
+    @SQL(value = COUNT_BY_HOME_REGION_SQL, operationType = CrudOperation.COUNT_BY_HOME_REGION)
+    public Map<Region, Long> countByHomeRegion() {
+        return query(CrudOperation.COUNT_BY_HOME_REGION, ps -> {}, rs -> {
+            Map<Region, Long> counts = new EnumMap<>(Region.class);
+            while (rs.next()) {
+                counts.merge(AddressRowMapper.region(rs.getString(1)), rs.getLong(2), Long::sum);
+            }
+            return counts;
+        });
+    }
+
+    /**
+     * @return How many people live in each city of the region, ordered by city.
+     */
+    @SQL(value = COUNT_BY_HOME_CITY_SQL, operationType = CrudOperation.COUNT_BY_HOME_CITY)
+    public Map<String, Long> countByHomeCity(Region region) {
+        return query(CrudOperation.COUNT_BY_HOME_CITY, ps -> ps.setString(1, region.name()), rs -> {
+            Map<String, Long> counts = new LinkedHashMap<>();
+            while (rs.next()) {
+                counts.put(rs.getString(1), rs.getLong(2));
+            }
+            return counts;
+        });
+    }
+
+    /**
+     * @return How many people were born in each decade, e.g. 1980 for 1980 to 1989, in order. Decades are taken
+     * from the date of birth in UTC, as it is stored.
+     */
+    @SQL(value = COUNT_BY_BIRTH_DECADE_SQL, operationType = CrudOperation.COUNT_BY_BIRTH_DECADE)
+    public Map<Integer, Long> countByBirthDecade() {
+        return query(CrudOperation.COUNT_BY_BIRTH_DECADE, ps -> {}, PeopleRepository::readCounts);
+    }
+
+    /**
+     * @return How many parents have each number of children, in order. People without children aren't counted.
+     */
+    @SQL(value = COUNT_CHILDREN_PER_PARENT_SQL, operationType = CrudOperation.COUNT_CHILDREN_PER_PARENT)
+    public Map<Integer, Long> countChildrenPerParent() {
+        return query(CrudOperation.COUNT_CHILDREN_PER_PARENT, ps -> {}, PeopleRepository::readCounts);
+    }
+
+    /**
+     * Streams every person with their addresses, parent and spouse IDs through a forward-only cursor, in ID order,
+     * without mapping them to entities. The handler sees each row once and must not keep the result set; the
+     * columns and their labels are those of EXPORT_SQL.
+     * @param fetchSize Rows the driver fetches at a time.
+     * @return The number of rows handled.
+     */
+    @SQL(value = EXPORT_SQL, operationType = CrudOperation.EXPORT)
+    public long forEachExportRow(int fetchSize, RowHandler handler) {
+        return query(CrudOperation.EXPORT, ps -> ps.setFetchSize(fetchSize), rs -> {
+            handler.start(rs.getMetaData());
+            long rows = 0;
+            while (rs.next()) {
+                handler.handle(rs);
+                rows++;
             }
+            return rows;
+        });
+    }
+
+    private static Map<Integer, Long> readCounts(ResultSet rs) throws SQLException {
+        Map<Integer, Long> counts = new LinkedHashMap<>();
+        while (rs.next()) {
+            counts.put(rs.getInt(1), rs.getLong(2));
+        }
+        return counts;
+    }
+
+    /**
+     * Copies every person and address into a compact, read-only {@link PeopleSnapshot}, e.g. to serve lookups
+     * without the database.
+     */
+    public PeopleSnapshot snapshot() {
+        try (ConnectionLease lease = connections.borrow()) {
+            return PeopleSnapshot.load(lease.connection());
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * The repository people's addresses are saved through, e.g. to enable address deduplication.
+     */
+    public AddressRepository getAddressRepository() {
+        return addressRepository;
+    }
+
+    /**
+     * Chooses how findById and findByIds load children; see {@link FetchStrategy}.
+     */
+    public void setFetchStrategy(FetchStrategy fetchStrategy) {
+        this.fetchStrategy = fetchStrategy;
+    }
+
+    public FetchStrategy getFetchStrategy() {
+        return fetchStrategy;
+    }
+
+    /**
+     * Chooses what delete and deleteAllById remove along with each person; see {@link DeleteMode}.
+     */
+    public void setDeleteMode(DeleteMode deleteMode) {
+        this.deleteMode = deleteMode;
+    }
+
+    public DeleteMode getDeleteMode() {
+        return deleteMode;
+    }
+
+    @Override
+    public void delete(Person person) {
+        if (deleteMode == DeleteMode.PERSON_ONLY) super.delete(person);
+        // An unsaved person has no subtree to delete.
+        else if (person.getId() != null) deleteAllById(List.of(person.getId()));
+    }
+
+    @Override
+    public long delete(Person... people) {
+        if (deleteMode == DeleteMode.PERSON_ONLY) return super.delete(people);
+        return deleteAllById(Arrays.stream(people).map(Person::getId).filter(Objects::nonNull).toList());
+    }
+
+    /**
+     * With {@link DeleteMode#CASCADE}, deletes the people with these IDs and their descendants.
+     * @return The number of people deleted, descendants included.
+     */
+    @Override
+    public long deleteAllById(Collection<Long> ids, int chunkSize) {
+        if (deleteMode == DeleteMode.PERSON_ONLY || ids.isEmpty()) return super.deleteAllById(ids, chunkSize);
+        try (ConnectionLease lease = connections.borrow()) {
+            Connection connection = lease.connection();
+            // Join a transaction the caller has open, e.g. a unit of work's, rather than committing it.
+            if (!connection.getAutoCommit()) return deleteSubtrees(lease, ids, chunkSize);
+            connection.setAutoCommit(false);
+            try {
+                long deleted = deleteSubtrees(lease, ids, chunkSize);
+                connection.commit();
+                return deleted;
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Cascading delete rolled back.", e);
+        }
+    }
+
+    /**
+     * How far each of the people with these IDs is below the others in the stored PARENT_ID tree: 0 when none of
+     * the others is their ancestor. Deleting in decreasing depth removes children before their parents.
+     */
+    Map<Long, Integer> depthsAmong(Collection<Long> ids) {
+        Map<Long, Integer> depths = new HashMap<>();
+        if (ids.isEmpty()) return depths;
+        Set<Long> wanted = new HashSet<>(ids);
+        try (ConnectionLease lease = connections.borrow()) {
+            PreparedStatement ps = prepare(lease, CrudOperation.FIND_SUBTREE, () -> FIND_SUBTREE_SQL);
+            ps.setArray(1, lease.connection().createArrayOf("BIGINT", wanted.toArray()));
+            try (ResultSet rs = executeQuery(CrudOperation.FIND_SUBTREE, ps)) {
+                while (rs.next()) {
+                    long id = rs.getLong(1);
+                    if (wanted.contains(id)) depths.merge(id, rs.getInt(2), Math::max);
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        return depths;
+    }
+
+    /**
+     * Deletes each generation of the subtrees, deepest first, then the addresses only they referred to.
+     */
+    private long deleteSubtrees(ConnectionLease lease, Collection<Long> rootIds, int chunkSize) throws SQLException {
+        Map<Long, Integer> depths = new HashMap<>();
+        Set<Long> addressIds = new HashSet<>();
+        PreparedStatement ps = prepare(lease, CrudOperation.FIND_SUBTREE, () -> FIND_SUBTREE_SQL);
+        ps.setArray(1, lease.connection().createArrayOf("BIGINT", rootIds.toArray()));
+        try (ResultSet rs = executeQuery(CrudOperation.FIND_SUBTREE, ps)) {
+            while (rs.next()) {
+                // A root that is also a descendant of another root is deleted with the deeper generation.
+                depths.merge(rs.getLong(1), rs.getInt(2), Math::max);
+                for (int column = 3; column <= 4; column++) {
+                    long addressId = rs.getLong(column);
+                    if (!rs.wasNull()) addressIds.add(addressId);
+                }
+            }
+        }
+        if (depths.isEmpty()) return 0;
+
+        Array deletedIds = lease.connection().createArrayOf("BIGINT", depths.keySet().toArray());
+        ps = prepare(lease, CrudOperation.CLEAR_SPOUSES, () -> CLEAR_SPOUSES_SQL);
+        ps.setArray(1, deletedIds);
+        executeUpdate(CrudOperation.CLEAR_SPOUSES, ps);
+
+        Map<Integer, List<Long>> generations = new TreeMap<>(Comparator.reverseOrder());
+        depths.forEach((id, depth) -> generations.computeIfAbsent(depth, d -> new ArrayList<>()).add(id));
+        long deleted = 0;
+        for (List<Long> generation : generations.values()) {
+            deleted += super.deleteAllById(generation, chunkSize);
+        }
+
+        if (!addressIds.isEmpty()) {
+            Array candidates = lease.connection().createArrayOf("BIGINT", addressIds.toArray());
+            ps = prepare(lease, CrudOperation.FIND_ADDRESS_REFERENCES, () -> FIND_ADDRESS_REFERENCES_SQL);
+            ps.setArray(1, candidates);
+            ps.setArray(2, candidates);
+            try (ResultSet rs = executeQuery(CrudOperation.FIND_ADDRESS_REFERENCES, ps)) {
+                while (rs.next()) {
+                    addressIds.remove(rs.getLong(1));
+                    addressIds.remove(rs.getLong(2));
+                }
+            }
+            addressRepository.deleteAllById(addressIds, chunkSize);
+            EntityCache<Address> addresses = sharedAddresses;
+            if (addresses != null) addressIds.forEach(addresses::invalidate);
+        }
+        return deleted;
+    }
+
+    /**
+     * Fills in the children of all the given people with one query, e.g. for a page from findAll.
+     */
+    public void loadChildren(Collection<Person> parents) {
+        try (ConnectionLease lease = connections.borrow()) {
+            loadChildren(lease, parents);
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    protected void postLoad(ConnectionLease lease, Collection<Person> people) throws SQLException {
+        if (fetchStrategy == FetchStrategy.SEPARATE_CHILDREN) {
+            loadChildren(lease, people);
+        }
+    }
+
+    private void loadChildren(ConnectionLease lease, Collection<Person> parents) throws SQLException {
+        if (parents.isEmpty()) return;
+        Map<Long, Person> parentsById = new HashMap<>();
+        parents.forEach(parent -> parentsById.put(parent.getId(), parent));
+        PreparedStatement ps = prepare(lease, CrudOperation.FIND_CHILDREN, () -> FIND_CHILDREN_SQL);
+        ps.setArray(1, lease.connection().createArrayOf("BIGINT", parentsById.keySet().toArray()));
+        try (ResultSet rs = executeQuery(CrudOperation.FIND_CHILDREN, ps)) {
+            while (rs.next()) {
+                Person parent = parentsById.get(rs.getLong(CHILDREN_PARENT_ID.first(rs)));
+                parent.addChild(CHILDREN_CHILD.map(rs));
+            }
+        }
+    }
+
+    @Override
+    Person extractEntityFromResultsSet(ResultSet rs) throws SQLException{
+        if (fetchStrategy == FetchStrategy.SEPARATE_CHILDREN) {
+            return extractEntityFromRow(rs);
+        }
+        Person parent = extractParent(rs);
+        do {
+            extractChild(rs, parent);
         } while (rs.next());
         return parent;
     }
 
-    private static Person extractPerson(ResultSet rs, String aliasPrefix) throws SQLException {
-        Person foundPerson;
-        long personId = rs.getLong(aliasPrefix + "ID");
-        String firstName = rs.getString(aliasPrefix + "FIRST_NAME");
-        String lastName = rs.getString(aliasPrefix + "LAST_NAME");
-        ZonedDateTime dob = ZonedDateTime.of(rs.getTimestamp(aliasPrefix + "DOB").toLocalDateTime(),
-                ZoneId.of("+0"));
-        BigDecimal salary = rs.getBigDecimal(aliasPrefix + "SALARY");
-//        long homeAddressId = rs.getLong(aliasPrefix + "HOME_ADDRESS");
-        foundPerson = new Person(firstName, lastName, dob);
-        foundPerson.setId(personId);
-        foundPerson.setSalary(salary);
-        return foundPerson;
-    }
-
-    private static Address extractAddress(ResultSet rs, String addressType) throws SQLException {
-        long addressId = rs.getLong(addressType + "ID");
-        if (rs.getObject(addressType + "ID") == null) { return null; }
-        String streetAddress = rs.getString(addressType + "STREET_ADDRESS");
-        String address2 = rs.getString(addressType + "ADDRESS2");
-        String city = rs.getString(addressType + "CITY");
-        String state = rs.getString(addressType + "STATE");
-        String postcode = rs.getString(addressType + "POSTCODE");
-        String county = rs.getString(addressType + "COUNTY");
-        Region region = Region.valueOf(rs.getString(addressType + "REGION").toUpperCase());
-        String country = rs.getString(addressType + "COUNTRY");
-        return new Address(addressId, streetAddress, address2, city, state, postcode, country, county, region);
+    /**
+     * Rebuilds each parent once from the rows FIND_BY_IDS_SQL returns for it, one row per child.
+     */
+    @Override
+    Map<Long, Person> extractEntitiesFromResultSet(ResultSet rs) throws SQLException {
+        if (fetchStrategy == FetchStrategy.SEPARATE_CHILDREN) {
+            return super.extractEntitiesFromResultSet(rs);
+        }
+        Map<Long, Person> parents = new LinkedHashMap<>();
+        while (rs.next()) {
+            long parentId = rs.getLong(FAMILY_KEYS.resolve(rs)[0]);
+            Person parent = parents.get(parentId);
+            if (parent == null) {
+                parent = extractParent(rs);
+                parents.put(parentId, parent);
+            }
+            extractChild(rs, parent);
+        }
+        return parents;
+    }
+
+    private static Person extractParent(ResultSet rs) throws SQLException {
+        Person parent = FAMILY_PARENT.map(rs);
+        parent.setHomeAddress(FAMILY_HOME.map(rs));
+        parent.setBusinessAddress(FAMILY_BUSINESS.map(rs));
+        long spouseId = rs.getLong(FAMILY_KEYS.resolve(rs)[1]);
+        parent.setSpouseId(rs.wasNull() ? null : spouseId);
+        parent.markClean();
+        return parent;
+    }
+
+    private static void extractChild(ResultSet rs, Person parent) throws SQLException {
+        Person foundChild = FAMILY_CHILD.map(rs);
+        if (foundChild != null) {
+            parent.addChild(foundChild);
+        }
+    }
+
+    /**
+     * Maps one row of FIND_ALL_SQL, FIND_PAGE_SQL or the finders. Those queries don't join CHILD, so children are
+     * left empty; use findById or loadChildren to load a person's family.
+     */
+    @Override
+    @SQL(value = FIND_ALL_SQL, operationType = CrudOperation.FIND_ALL)
+    @SQL(value = FIND_PAGE_SQL, operationType = CrudOperation.FIND_PAGE)
+    @SQL(value = FIND_BY_EMAIL_SQL, operationType = CrudOperation.FIND_BY_EMAIL)
+    @SQL(value = FIND_BY_LAST_NAME_PREFIX_SQL, operationType = CrudOperation.FIND_BY_LAST_NAME)
+    @SQL(value = FIND_BY_HOME_REGION_SQL, operationType = CrudOperation.FIND_BY_HOME_REGION)
+    @SQL(value = FIND_BY_HOME_CITY_SQL, operationType = CrudOperation.FIND_BY_HOME_CITY)
+    Person extractEntityFromRow(ResultSet rs) throws SQLException {
+        Person person = PERSON.map(rs);
+        person.setHomeAddress(PERSON_HOME.map(rs));
+        person.setBusinessAddress(PERSON_BUSINESS.map(rs));
+        long spouseId = rs.getLong(PERSON_SPOUSE.first(rs));
+        person.setSpouseId(rs.wasNull() ? null : spouseId);
+        person.markClean();
+        return person;
     }
 
     @Override
     protected String getFindByIdSql() {
-        return FIND_BY_ID_SQL;
+        return fetchStrategy == FetchStrategy.JOINED ? FIND_BY_ID_SQL : FIND_PERSON_BY_ID_SQL;
+    }
+
+    @Override
+    protected String getFindByIdsSql() {
+        return fetchStrategy == FetchStrategy.JOINED ? FIND_BY_IDS_SQL : FIND_PEOPLE_BY_IDS_SQL;
     }
 
     @Override
@@ -183,6 +791,76 @@ public class PeopleRepository extends CRUDRepository<Person> {
         return DELETE_IN_SQL;
     }
 
+    @Override
+    public void setCache(EntityCache<Person> cache) {
+        sharedAddresses = cache == null ? null : new EntityCache<>(cache.maximumSize(), cache.timeToLive());
+        if (cache != null) cache.indexBy(PeopleRepository::childIds);
+        super.setCache(cache);
+    }
+
+    /**
+     * Addresses are immutable, so cached people who share a home or business address share one Address instance.
+     */
+    @Override
+    protected Person prepareForCache(Person person) {
+        person.getHomeAddress().map(this::sharedAddress).ifPresent(person::setHomeAddress);
+        person.getBusinessAddress().map(this::sharedAddress).ifPresent(person::setBusinessAddress);
+        return person;
+    }
+
+    /**
+     * A clean copy of the cached person and their children, sharing only the immutable addresses.
+     */
+    @Override
+    protected Person copyCached(Person person) {
+        Person copy = new Person(person.getFirstName(), person.getLastName(), person.getDob());
+        copy.setId(person.getId());
+        copy.setSalary(person.getSalary());
+        copy.setEmail(person.getEmail());
+        copy.setHomeAddress(person.getHomeAddress().orElse(null));
+        copy.setBusinessAddress(person.getBusinessAddress().orElse(null));
+        copy.setSpouseId(person.getSpouseId().orElse(null));
+        person.getChildren().forEach(child -> copy.addChild(copyCached(child)));
+        copy.markClean();
+        return copy;
+    }
+
+    private Address sharedAddress(Address address) {
+        Address shared = sharedAddresses.get(address.id());
+        if (address.equals(shared)) return shared;
+        sharedAddresses.put(address.id(), address);
+        return address;
+    }
+
+    // The cache indexes each cached parent by its children's IDs, so a child's parent is found without a scan.
+    private static List<Long> childIds(Person parent) {
+        return parent.getChildren().stream().map(Person::getId).filter(Objects::nonNull).toList();
+    }
+
+    /**
+     * A cached parent holds copies of its children, so writing a person also evicts their parent. When the parent
+     * isn't known from the entity, the cached person listing it as a child is found through the cache's index.
+     */
+    @Override
+    protected void evictFromCache(EntityCache<Person> cache, Person person) {
+        Long id = person.getId();
+        if (id != null) {
+            cache.invalidate(id);
+            cache.invalidateByKey(id);
+        }
+        person.getParent().map(Person::getId).ifPresent(cache::invalidate);
+    }
+
+    @Override
+    protected void evictFromCache(EntityCache<Person> cache, Collection<Long> ids) {
+        Set<Long> deleted = new HashSet<>(ids);
+        deleted.forEach(id -> {
+            cache.invalidate(id);
+            cache.invalidateByKey(id);
+        });
+        cache.invalidateIf(p -> p.getSpouseId().filter(deleted::contains).isPresent());
+    }
+
     private static Timestamp convertDobToTimeStamp(ZonedDateTime dob) {
         return Timestamp.valueOf(dob.withZoneSameInstant(ZoneId.of("+0")).toLocalDateTime());
     }
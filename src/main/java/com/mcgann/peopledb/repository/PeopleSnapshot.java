@@ -0,0 +1,309 @@
+package com.mcgann.peopledb.repository;
+
+import com.mcgann.peopledb.model.Address;
+import com.mcgann.peopledb.model.Person;
+import com.mcgann.peopledb.model.Region;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.Optional;
+
+/**
+ * A read-only copy of every person and address, held in primitive columns rather than as entities: IDs as longs,
+ * dates of birth as epoch millis, salaries as unscaled longs, strings as int codes into a table of the distinct
+ * values, regions as ordinals and children as int offsets into one array of rows. People are only built when
+ * they are looked up, so millions of them take a fraction of the heap the entities would.
+ * <p>
+ * A snapshot never changes after it is loaded; take a new one with {@link PeopleRepository#snapshot()} to see
+ * later writes. It can be shared between threads.
+ */
+public final class PeopleSnapshot {
+    public static final String SNAPSHOT_PEOPLE_SQL = """
+            SELECT ID, FIRST_NAME, LAST_NAME, DOB, SALARY, EMAIL, HOME_ADDRESS, BUSINESS_ADDRESS, SPOUSE, PARENT_ID
+            FROM PEOPLE ORDER BY ID
+            """;
+    public static final String SNAPSHOT_ADDRESSES_SQL = """
+            SELECT ID, STREET_ADDRESS, ADDRESS2, CITY, STATE, POSTCODE, COUNTRY, COUNTY, REGION
+            FROM ADDRESSES ORDER BY ID
+            """;
+
+    static final long NO_VALUE = Long.MIN_VALUE;
+    static final int NO_ROW = -1;
+    static final int STREET_ADDRESS = 0, ADDRESS2 = 1, CITY = 2, STATE = 3, POSTCODE = 4, COUNTRY = 5, COUNTY = 6,
+            ADDRESS_STRING_COLUMNS = 7;
+
+    private static final ZoneId DOB_ZONE = ZoneId.of("+0");
+    private static final Region[] REGIONS = Region.values();
+    private static final int FETCH_SIZE = 1000;
+
+    // One row per person, in ID order.
+    final long[] ids;
+    final int[] firstNames;
+    final int[] lastNames;
+    final long[] dobs;
+    final long[] salaries;
+    final int salaryScale;
+    final String[] emails;
+    final int[] homeAddresses;
+    final int[] businessAddresses;
+    final long[] spouseIds;
+    // The rows of row r's children are childRows[childOffsets[r]] up to childRows[childOffsets[r + 1]].
+    final int[] childOffsets;
+    final int[] childRows;
+    final String[] names;
+
+    // One row per address, in ID order.
+    final long[] addressIds;
+    final int[][] addressColumns;
+    final byte[] regions;
+    final String[] addressStrings;
+
+    PeopleSnapshot(long[] ids, int[] firstNames, int[] lastNames, long[] dobs, long[] salaries, int salaryScale,
+                   String[] emails, int[] homeAddresses, int[] businessAddresses, long[] spouseIds,
+                   int[] childOffsets, int[] childRows, String[] names, long[] addressIds, int[][] addressColumns,
+                   byte[] regions, String[] addressStrings) {
+        this.ids = ids;
+        this.firstNames = firstNames;
+        this.lastNames = lastNames;
+        this.dobs = dobs;
+        this.salaries = salaries;
+        this.salaryScale = salaryScale;
+        this.emails = emails;
+        this.homeAddresses = homeAddresses;
+        this.businessAddresses = businessAddresses;
+        this.spouseIds = spouseIds;
+        this.childOffsets = childOffsets;
+        this.childRows = childRows;
+        this.names = names;
+        this.addressIds = addressIds;
+        this.addressColumns = addressColumns;
+        this.regions = regions;
+        this.addressStrings = addressStrings;
+    }
+
+    /**
+     * Reads both tables with forward-only cursors. For a consistent view of a database that is being written to,
+     * call this inside a transaction.
+     */
+    static PeopleSnapshot load(Connection connection) throws SQLException {
+        AddressColumns addresses = new AddressColumns();
+        try (PreparedStatement ps = prepare(connection, SNAPSHOT_ADDRESSES_SQL);
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) addresses.add(rs);
+        }
+        PeopleColumns people = new PeopleColumns(addresses);
+        try (PreparedStatement ps = prepare(connection, SNAPSHOT_PEOPLE_SQL);
+             ResultSet rs = ps.executeQuery()) {
+            people.salaryScale = rs.getMetaData().getScale(5);
+            while (rs.next()) people.add(rs);
+        }
+        return people.build();
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    public int addressCount() {
+        return addressIds.length;
+    }
+
+    /**
+     * @return The highest person ID in the snapshot, or 0 if it holds no one.
+     */
+    public long maxId() {
+        return ids.length == 0 ? 0 : ids[ids.length - 1];
+    }
+
+    public boolean contains(long id) {
+        return row(id) != NO_ROW;
+    }
+
+    /**
+     * Builds the person with their addresses and children, as PeopleRepository.findById does. Each call returns
+     * new objects.
+     */
+    public Optional<Person> findById(long id) {
+        int row = row(id);
+        if (row == NO_ROW) return Optional.empty();
+        Person person = person(row);
+        person.setHomeAddress(address(homeAddresses[row]));
+        person.setBusinessAddress(address(businessAddresses[row]));
+        if (spouseIds[row] != NO_VALUE) person.setSpouseId(spouseIds[row]);
+        for (int child = childOffsets[row]; child < childOffsets[row + 1]; child++) {
+            person.addChild(person(childRows[child]));
+        }
+        person.markClean();
+        return Optional.of(person);
+    }
+
+    public Optional<Address> findAddressById(long id) {
+        int row = Arrays.binarySearch(addressIds, id);
+        return Optional.ofNullable(address(row < 0 ? NO_ROW : row));
+    }
+
+    private int row(long id) {
+        int row = Arrays.binarySearch(ids, id);
+        return row < 0 ? NO_ROW : row;
+    }
+
+    private Person person(int row) {
+        Person person = new Person(decode(names, firstNames[row]), decode(names, lastNames[row]),
+                dobs[row] == NO_VALUE ? null : ZonedDateTime.ofInstant(Instant.ofEpochMilli(dobs[row]), DOB_ZONE));
+        person.setId(ids[row]);
+        person.setSalary(salaries[row] == NO_VALUE ? null : BigDecimal.valueOf(salaries[row], salaryScale));
+        person.setEmail(emails[row]);
+        person.markClean();
+        return person;
+    }
+
+    private Address address(int row) {
+        if (row == NO_ROW) return null;
+        return new Address(addressIds[row], addressString(STREET_ADDRESS, row), addressString(ADDRESS2, row),
+                addressString(CITY, row), addressString(STATE, row), addressString(POSTCODE, row),
+                addressString(COUNTRY, row), addressString(COUNTY, row),
+                regions[row] == NO_ROW ? null : REGIONS[regions[row]]);
+    }
+
+    private String addressString(int column, int row) {
+        return decode(addressStrings, addressColumns[column][row]);
+    }
+
+    private static String decode(String[] strings, int code) {
+        return code == StringDictionary.NULL ? null : strings[code];
+    }
+
+    private static PreparedStatement prepare(Connection connection, String sql) throws SQLException {
+        PreparedStatement ps = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY,
+                ResultSet.CONCUR_READ_ONLY);
+        ps.setFetchSize(FETCH_SIZE);
+        return ps;
+    }
+
+    private static long readLong(ResultSet rs, int column) throws SQLException {
+        long value = rs.getLong(column);
+        return rs.wasNull() ? NO_VALUE : value;
+    }
+
+    private static final class AddressColumns {
+        private final StringDictionary strings = new StringDictionary();
+        private long[] ids = new long[1024];
+        private final int[][] columns = new int[ADDRESS_STRING_COLUMNS][1024];
+        private byte[] regions = new byte[1024];
+        private int size;
+
+        private void add(ResultSet rs) throws SQLException {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                for (int column = 0; column < ADDRESS_STRING_COLUMNS; column++) {
+                    columns[column] = Arrays.copyOf(columns[column], size * 2);
+                }
+                regions = Arrays.copyOf(regions, size * 2);
+            }
+            ids[size] = rs.getLong(1);
+            for (int column = 0; column < ADDRESS_STRING_COLUMNS; column++) {
+                columns[column][size] = strings.encode(rs.getString(column + 2));
+            }
+            String region = rs.getString(9);
+            regions[size] = region == null ? NO_ROW : (byte) AddressRowMapper.region(region).ordinal();
+            size++;
+        }
+
+        private int row(long id) {
+            if (id == NO_VALUE) return NO_ROW;
+            int row = Arrays.binarySearch(ids, 0, size, id);
+            return row < 0 ? NO_ROW : row;
+        }
+    }
+
+    private static final class PeopleColumns {
+        private final AddressColumns addresses;
+        private final StringDictionary names = new StringDictionary();
+        private long[] ids = new long[1024];
+        private int[] firstNames = new int[1024];
+        private int[] lastNames = new int[1024];
+        private long[] dobs = new long[1024];
+        private long[] salaries = new long[1024];
+        private int salaryScale;
+        private String[] emails = new String[1024];
+        private int[] homeAddresses = new int[1024];
+        private int[] businessAddresses = new int[1024];
+        private long[] spouseIds = new long[1024];
+        private long[] parentIds = new long[1024];
+        private int size;
+
+        private PeopleColumns(AddressColumns addresses) {
+            this.addresses = addresses;
+        }
+
+        private void add(ResultSet rs) throws SQLException {
+            if (size == ids.length) grow(size * 2);
+            ids[size] = rs.getLong(1);
+            firstNames[size] = names.encode(rs.getString(2));
+            lastNames[size] = names.encode(rs.getString(3));
+            Timestamp dob = rs.getTimestamp(4);
+            dobs[size] = dob == null ? NO_VALUE : dob.toLocalDateTime().toInstant(ZoneOffset.UTC).toEpochMilli();
+            BigDecimal salary = rs.getBigDecimal(5);
+            salaries[size] = salary == null ? NO_VALUE : salary.setScale(salaryScale).unscaledValue().longValueExact();
+            emails[size] = rs.getString(6);
+            homeAddresses[size] = addresses.row(readLong(rs, 7));
+            businessAddresses[size] = addresses.row(readLong(rs, 8));
+            spouseIds[size] = readLong(rs, 9);
+            parentIds[size] = readLong(rs, 10);
+            size++;
+        }
+
+        private void grow(int length) {
+            ids = Arrays.copyOf(ids, length);
+            firstNames = Arrays.copyOf(firstNames, length);
+            lastNames = Arrays.copyOf(lastNames, length);
+            dobs = Arrays.copyOf(dobs, length);
+            salaries = Arrays.copyOf(salaries, length);
+            emails = Arrays.copyOf(emails, length);
+            homeAddresses = Arrays.copyOf(homeAddresses, length);
+            businessAddresses = Arrays.copyOf(businessAddresses, length);
+            spouseIds = Arrays.copyOf(spouseIds, length);
+            parentIds = Arrays.copyOf(parentIds, length);
+        }
+
+        /**
+         * Trims the columns to size and turns the parent IDs into child offsets, counting each parent's children
+         * and then placing them.
+         */
+        private PeopleSnapshot build() {
+            grow(size);
+            int[] parentRows = new int[size];
+            int[] childOffsets = new int[size + 1];
+            for (int row = 0; row < size; row++) {
+                int parent = parentIds[row] == NO_VALUE ? NO_ROW : Arrays.binarySearch(ids, parentIds[row]);
+                parentRows[row] = parent < 0 ? NO_ROW : parent;
+                if (parent >= 0) childOffsets[parent + 1]++;
+            }
+            for (int row = 0; row < size; row++) {
+                childOffsets[row + 1] += childOffsets[row];
+            }
+            int[] childRows = new int[childOffsets[size]];
+            int[] placed = Arrays.copyOf(childOffsets, size);
+            for (int row = 0; row < size; row++) {
+                if (parentRows[row] != NO_ROW) childRows[placed[parentRows[row]]++] = row;
+            }
+            int[][] addressColumns = new int[ADDRESS_STRING_COLUMNS][];
+            for (int column = 0; column < ADDRESS_STRING_COLUMNS; column++) {
+                addressColumns[column] = Arrays.copyOf(addresses.columns[column], addresses.size);
+            }
+            return new PeopleSnapshot(ids, firstNames, lastNames, dobs, salaries, salaryScale, emails, homeAddresses,
+                    businessAddresses, spouseIds, childOffsets, childRows, names.toArray(),
+                    Arrays.copyOf(addresses.ids, addresses.size), addressColumns,
+                    Arrays.copyOf(addresses.regions, addresses.size), addresses.strings.toArray());
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.mcgann.peopledb.repository;
+
+import com.mcgann.peopledb.model.Person;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+
+/**
+ * Maps the person columns sharing an alias prefix, e.g. "CHILD_", by index. Like {@link ColumnIndexes}, one
+ * instance per query shape.
+ */
+final class PersonRowMapper {
+    private static final ZoneId DOB_ZONE = ZoneId.of("+0");
+    private static final int ID = 0, FIRST_NAME = 1, LAST_NAME = 2, DOB = 3, SALARY = 4, EMAIL = 5;
+
+    private final ColumnIndexes columns;
+
+    PersonRowMapper(String aliasPrefix) {
+        this.columns = new ColumnIndexes(aliasPrefix + "ID", aliasPrefix + "FIRST_NAME", aliasPrefix + "LAST_NAME",
+                aliasPrefix + "DOB", aliasPrefix + "SALARY", aliasPrefix + "EMAIL");
+    }
+
+    /**
+     * @return The person, or null if the ID column is null, e.g. for an outer join that matched nothing.
+     */
+    Person map(ResultSet rs) throws SQLException {
+        int[] c = columns.resolve(rs);
+        long id = rs.getLong(c[ID]);
+        if (rs.wasNull()) return null;
+        Timestamp dob = rs.getTimestamp(c[DOB]);
+        Person person = new Person(rs.getString(c[FIRST_NAME]), rs.getString(c[LAST_NAME]),
+                ZonedDateTime.of(dob.toLocalDateTime(), DOB_ZONE));
+        person.setId(id);
+        person.setSalary(rs.getBigDecimal(c[SALARY]));
+        person.setEmail(rs.getString(c[EMAIL]));
+        person.markClean();
+        return person;
+    }
+}
@@ -0,0 +1,118 @@
+package com.mcgann.peopledb.repository;
+
+import com.mcgann.peopledb.annotation.Id;
+import com.mcgann.peopledb.annotation.SQL;
+import com.mcgann.peopledb.model.CrudOperation;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Everything CRUDRepository used to find by reflection on each call, resolved once per repository class:
+ * the {@link SQL} declared for each {@link CrudOperation} and handles to read and write the entity's {@link Id} field.
+ * Instances are shared by every repository of the same class.
+ */
+final class RepositoryMetadata {
+    private static final ClassValue<RepositoryMetadata> METADATA = new ClassValue<>() {
+        @Override
+        protected RepositoryMetadata computeValue(Class<?> repositoryType) {
+            return new RepositoryMetadata(repositoryType);
+        }
+    };
+
+    private final Map<CrudOperation, String> sqlByOperation;
+    private final MethodHandle idGetter;
+    private final MethodHandle idSetter;
+
+    private RepositoryMetadata(Class<?> repositoryType) {
+        this.sqlByOperation = Collections.unmodifiableMap(readSqlAnnotations(repositoryType));
+        Field idField = findIdField(resolveEntityType(repositoryType));
+        if (idField == null) {
+            this.idGetter = null;
+            this.idSetter = null;
+        } else {
+            try {
+                idField.setAccessible(true);
+                MethodHandles.Lookup lookup = MethodHandles.lookup();
+                this.idGetter = lookup.unreflectGetter(idField)
+                        .asType(MethodType.methodType(Object.class, Object.class));
+                this.idSetter = lookup.unreflectSetter(idField)
+                        .asType(MethodType.methodType(void.class, Object.class, Object.class));
+            } catch (IllegalAccessException e) {
+                throw new RuntimeException("Unable to access ID field " + idField, e);
+            }
+        }
+    }
+
+    static RepositoryMetadata of(Class<?> repositoryType) {
+        return METADATA.get(repositoryType);
+    }
+
+    /**
+     * @return The SQL declared through {@link SQL} for this operation, or null if the repository declares none.
+     */
+    String sql(CrudOperation operationType) {
+        return sqlByOperation.get(operationType);
+    }
+
+    Long getId(Object entity) {
+        if (idGetter == null) throw new RuntimeException("No ID annotated field found");
+        try {
+            Object id = idGetter.invokeExact(entity);
+            return (Long) id;
+        } catch (Throwable e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    void setId(Object entity, Long id) {
+        if (idSetter == null) return;
+        try {
+            idSetter.invokeExact(entity, (Object) id);
+        } catch (Throwable e) {
+            throw new RuntimeException("Unable to set ID field value.", e);
+        }
+    }
+
+    /**
+     * Subclasses win over superclasses, and the first method declaring an operation wins within a class.
+     */
+    private static Map<CrudOperation, String> readSqlAnnotations(Class<?> repositoryType) {
+        Map<CrudOperation, String> sqlByOperation = new EnumMap<>(CrudOperation.class);
+        for (Class<?> type = repositoryType; type != null && type != Object.class; type = type.getSuperclass()) {
+            for (Method method : type.getDeclaredMethods()) {
+                Arrays.stream(method.getAnnotationsByType(SQL.class))
+                        .forEach(a -> sqlByOperation.putIfAbsent(a.operationType(), a.value()));
+            }
+        }
+        return sqlByOperation;
+    }
+
+    private static Class<?> resolveEntityType(Class<?> repositoryType) {
+        for (Class<?> type = repositoryType; type != null && type != Object.class; type = type.getSuperclass()) {
+            Type superType = type.getGenericSuperclass();
+            if (superType instanceof ParameterizedType parameterized
+                    && parameterized.getRawType() == CRUDRepository.class
+                    && parameterized.getActualTypeArguments()[0] instanceof Class<?> entityType) {
+                return entityType;
+            }
+        }
+        return null;
+    }
+
+    private static Field findIdField(Class<?> entityType) {
+        if (entityType == null) return null;
+        return Arrays.stream(entityType.getDeclaredFields())
+                .filter(f -> f.isAnnotationPresent(Id.class))
+                .findFirst().orElse(null);
+    }
+}
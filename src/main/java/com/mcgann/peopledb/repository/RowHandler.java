@@ -0,0 +1,19 @@
+package com.mcgann.peopledb.repository;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+
+/**
+ * Receives the rows of a streamed query one at a time, with the result set positioned on the current row.
+ */
+@FunctionalInterface
+public interface RowHandler {
+
+    /**
+     * Called once before the first row, even when there are none.
+     */
+    default void start(ResultSetMetaData metadata) throws SQLException {}
+
+    void handle(ResultSet row) throws SQLException;
+}
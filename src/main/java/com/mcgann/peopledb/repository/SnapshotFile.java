@@ -0,0 +1,246 @@
+package com.mcgann.peopledb.repository;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * Writes a {@link PeopleSnapshot} to a binary file and maps it back as a {@link MappedSnapshot}, so a service can
+ * start from the file instead of reading every row from the database.
+ * <p>
+ * The file is a fixed header followed by the snapshot's columns, little-endian. The header holds a magic number,
+ * the format version, the row counts, the highest person ID, a CRC32C and the offset of each column. The CRC32C
+ * covers the columns and then the header, leaving out the checksum itself. Strings are stored as tables of UTF-8
+ * bytes with an offset per string. Files are limited to 2 GB, the most one mapping can hold.
+ */
+public final class SnapshotFile {
+    static final int MAGIC = 0x50444253;
+    static final int VERSION = 2;
+    static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    // Column offsets in the header, in the order the columns are written.
+    static final int IDS = 0, FIRST_NAMES = 1, LAST_NAMES = 2, DOBS = 3, SALARIES = 4, EMAILS = 5,
+            HOME_ADDRESSES = 6, BUSINESS_ADDRESSES = 7, SPOUSE_IDS = 8, CHILD_OFFSETS = 9, CHILD_ROWS = 10,
+            ADDRESS_IDS = 11, ADDRESS_COLUMNS = 12, ADDRESS_REGIONS = 13, NAME_STRINGS = 14, EMAIL_STRINGS = 15,
+            ADDRESS_STRINGS = 16, SECTIONS = 17;
+    // Magic, version, person count, address count, salary scale, max ID, checksum, then the column offsets.
+    static final int HEADER_BYTES = 4 * 5 + 8 * 2 + 8 * SECTIONS;
+    static final int CHECKSUM_AT = 4 * 5 + 8;
+    static final int SECTIONS_AT = CHECKSUM_AT + 8;
+
+    private SnapshotFile() {
+    }
+
+    /**
+     * Writes the snapshot to a temporary file next to path, then moves it into place, so readers never map a
+     * partly written file.
+     */
+    public static void write(PeopleSnapshot snapshot, Path path) throws IOException {
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        long[] sections = new long[SECTIONS];
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                Output out = new Output(channel, HEADER_BYTES);
+                sections[IDS] = out.putLongs(snapshot.ids);
+                sections[FIRST_NAMES] = out.putInts(snapshot.firstNames);
+                sections[LAST_NAMES] = out.putInts(snapshot.lastNames);
+                sections[DOBS] = out.putLongs(snapshot.dobs);
+                sections[SALARIES] = out.putLongs(snapshot.salaries);
+                int[] emailCodes = new int[snapshot.emails.length];
+                int emailCount = 0;
+                for (int row = 0; row < emailCodes.length; row++) {
+                    emailCodes[row] = snapshot.emails[row] == null ? StringDictionary.NULL : emailCount++;
+                }
+                sections[EMAILS] = out.putInts(emailCodes);
+                sections[HOME_ADDRESSES] = out.putInts(snapshot.homeAddresses);
+                sections[BUSINESS_ADDRESSES] = out.putInts(snapshot.businessAddresses);
+                sections[SPOUSE_IDS] = out.putLongs(snapshot.spouseIds);
+                sections[CHILD_OFFSETS] = out.putInts(snapshot.childOffsets);
+                sections[CHILD_ROWS] = out.putInts(snapshot.childRows);
+                sections[ADDRESS_IDS] = out.putLongs(snapshot.addressIds);
+                sections[ADDRESS_COLUMNS] = out.position();
+                for (int[] column : snapshot.addressColumns) out.putInts(column);
+                sections[ADDRESS_REGIONS] = out.putBytes(snapshot.regions);
+                sections[NAME_STRINGS] = out.putStrings(snapshot.names, snapshot.names.length);
+                sections[EMAIL_STRINGS] = out.putStrings(snapshot.emails, emailCount);
+                sections[ADDRESS_STRINGS] = out.putStrings(snapshot.addressStrings, snapshot.addressStrings.length);
+                out.flush();
+
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ORDER);
+                header.putInt(MAGIC).putInt(VERSION).putInt(snapshot.size()).putInt(snapshot.addressCount())
+                        .putInt(snapshot.salaryScale).putLong(snapshot.maxId()).putLong(0);
+                for (long section : sections) header.putLong(section);
+                header.putLong(CHECKSUM_AT, checksum(out.checksum, header));
+                header.flip();
+                channel.write(header, 0);
+                // So a crash after the move can't leave a renamed but incomplete file.
+                channel.force(true);
+            }
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            try {
+                Files.deleteIfExists(temporary);
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Maps the file and checks its version, checksum and column offsets. The mapping stays valid after this returns
+     * and is released when the snapshot is garbage collected.
+     * @throws IOException If the file isn't a snapshot of this version, its checksum doesn't match or a column
+     * doesn't fit in the file.
+     */
+    public static MappedSnapshot open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_BYTES) throw new IOException(path + " is too short to be a snapshot.");
+            if (size > Integer.MAX_VALUE) throw new IOException(path + " is larger than 2 GB.");
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            buffer.order(ORDER);
+            if (buffer.getInt(0) != MAGIC) throw new IOException(path + " is not a people snapshot.");
+            if (buffer.getInt(4) != VERSION) {
+                throw new IOException(path + " has snapshot version " + buffer.getInt(4) + ", expected " +
+                        VERSION + ".");
+            }
+            CRC32C columns = new CRC32C();
+            columns.update(buffer.slice(HEADER_BYTES, (int) size - HEADER_BYTES));
+            if (checksum(columns, buffer) != buffer.getLong(CHECKSUM_AT)) {
+                throw new IOException(path + " failed its checksum.");
+            }
+            checkSections(path, buffer, size);
+            return new MappedSnapshot(buffer);
+        }
+    }
+
+    /**
+     * Adds the header, all but the checksum, to the checksum of the columns.
+     */
+    private static long checksum(CRC32C columns, ByteBuffer header) {
+        columns.update(header.slice(0, CHECKSUM_AT));
+        columns.update(header.slice(SECTIONS_AT, HEADER_BYTES - SECTIONS_AT));
+        return columns.getValue();
+    }
+
+    /**
+     * Checks the counts aren't negative and each column starts after the one before and has room for its rows
+     * before the next, so the mapped snapshot never reads outside the file.
+     */
+    private static void checkSections(Path path, ByteBuffer buffer, long size) throws IOException {
+        long people = buffer.getInt(8);
+        long addresses = buffer.getInt(12);
+        if (people < 0 || addresses < 0) throw new IOException(path + " has a negative row count.");
+        long[] minimum = new long[SECTIONS];
+        minimum[IDS] = minimum[DOBS] = minimum[SALARIES] = minimum[SPOUSE_IDS] = people * Long.BYTES;
+        minimum[FIRST_NAMES] = minimum[LAST_NAMES] = minimum[EMAILS] = minimum[HOME_ADDRESSES] =
+                minimum[BUSINESS_ADDRESSES] = people * Integer.BYTES;
+        minimum[CHILD_OFFSETS] = (people + 1) * Integer.BYTES;
+        minimum[ADDRESS_IDS] = addresses * Long.BYTES;
+        minimum[ADDRESS_COLUMNS] = addresses * PeopleSnapshot.ADDRESS_STRING_COLUMNS * Integer.BYTES;
+        minimum[ADDRESS_REGIONS] = addresses;
+        minimum[NAME_STRINGS] = minimum[EMAIL_STRINGS] = minimum[ADDRESS_STRINGS] = Integer.BYTES * 2;
+        long end = HEADER_BYTES;
+        for (int section = SECTIONS - 1; section >= 0; section--) {
+            long start = buffer.getLong(SECTIONS_AT + section * Long.BYTES);
+            long next = section == SECTIONS - 1 ? size : end;
+            if (start < HEADER_BYTES || start > next || next - start < minimum[section]) {
+                throw new IOException(path + " has a column outside the file.");
+            }
+            end = start;
+        }
+    }
+
+    /**
+     * Writes through one buffer, keeping the checksum of everything written.
+     */
+    private static final class Output {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16).order(ORDER);
+        private final CRC32C checksum = new CRC32C();
+        private long position;
+
+        private Output(FileChannel channel, long position) throws IOException {
+            this.channel = channel;
+            this.position = position;
+            channel.position(position);
+        }
+
+        private long position() {
+            return position + buffer.position();
+        }
+
+        private long putLongs(long[] values) throws IOException {
+            long start = position();
+            for (long value : values) {
+                ensure(Long.BYTES);
+                buffer.putLong(value);
+            }
+            return start;
+        }
+
+        private long putInts(int[] values) throws IOException {
+            long start = position();
+            for (int value : values) {
+                ensure(Integer.BYTES);
+                buffer.putInt(value);
+            }
+            return start;
+        }
+
+        private long putBytes(byte[] values) throws IOException {
+            long start = position();
+            for (int from = 0; from < values.length; ) {
+                ensure(1);
+                int length = Math.min(buffer.remaining(), values.length - from);
+                buffer.put(values, from, length);
+                from += length;
+            }
+            return start;
+        }
+
+        /**
+         * Writes the count non-null strings as a string count, count + 1 offsets into the bytes, then the bytes.
+         */
+        private long putStrings(String[] strings, int count) throws IOException {
+            byte[][] encoded = new byte[count][];
+            int[] offsets = new int[count + 1];
+            int string = 0;
+            for (String s : strings) {
+                if (s == null) continue;
+                encoded[string] = s.getBytes(StandardCharsets.UTF_8);
+                offsets[string + 1] = offsets[string] + encoded[string].length;
+                string++;
+            }
+            long start = position();
+            ensure(Integer.BYTES);
+            buffer.putInt(count);
+            putInts(offsets);
+            for (byte[] bytes : encoded) putBytes(bytes);
+            return start;
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) flush();
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            checksum.update(buffer.duplicate());
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+}
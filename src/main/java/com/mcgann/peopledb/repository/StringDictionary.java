@@ -0,0 +1,32 @@
+package com.mcgann.peopledb.repository;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Encodes strings as int codes while a {@link PeopleSnapshot} is built, so each distinct string is stored once.
+ * Null is encoded as {@link #NULL}.
+ */
+final class StringDictionary {
+    static final int NULL = -1;
+
+    private final Map<String, Integer> codes = new HashMap<>();
+    private final List<String> strings = new ArrayList<>();
+
+    int encode(String string) {
+        if (string == null) return NULL;
+        return codes.computeIfAbsent(string, s -> {
+            strings.add(s);
+            return strings.size() - 1;
+        });
+    }
+
+    /**
+     * @return The strings indexed by code.
+     */
+    String[] toArray() {
+        return strings.toArray(String[]::new);
+    }
+}
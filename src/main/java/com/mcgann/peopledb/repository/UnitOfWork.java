@@ -0,0 +1,189 @@
+package com.mcgann.peopledb.repository;
+
+import com.mcgann.peopledb.connection.ConnectionLease;
+import com.mcgann.peopledb.model.Address;
+import com.mcgann.peopledb.model.Person;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+/**
+ * Queues saves, updates and deletes of people and addresses, then writes them all in one transaction on commit.
+ * <p>
+ * Work is flushed in foreign key order as batches: new addresses, then new people a generation at a time (parents
+ * before children), then updates, then deleted people from the deepest generation up, then deleted addresses.
+ * Deleted people are ordered by their stored parents, not the in-memory ones, which may not be loaded.
+ * The whole unit commits once; if any statement fails it is rolled back and the entities queued in it may carry
+ * IDs or clean state from the rolled-back work, so reload them rather than retrying the same unit.
+ * <p>
+ * If the caller already has a transaction open on the connection, the unit is flushed into it and committing is
+ * left to the caller; a failure then rolls back only the unit's own work, to a savepoint.
+ * <p>
+ * Like the repositories on a single connection, a unit of work must only be used by one thread.
+ */
+public final class UnitOfWork {
+    private final PeopleRepository people;
+    private final AddressRepository addresses;
+    private final Queued<Person> newPeople = new Queued<>();
+    private final Queued<Address> newAddresses = new Queued<>();
+    private final Queued<Person> updatedPeople = new Queued<>();
+    private final Queued<Person> deletedPeople = new Queued<>();
+    private final Queued<Address> deletedAddresses = new Queued<>();
+
+    public UnitOfWork(PeopleRepository people) {
+        this.people = people;
+        this.addresses = people.getAddressRepository();
+    }
+
+    /**
+     * Queues the person, their unsaved addresses and their unsaved descendants for insertion.
+     */
+    public void save(Person person) {
+        newPeople.add(person);
+    }
+
+    public void save(Address address) {
+        newAddresses.add(address);
+    }
+
+    /**
+     * Queues the person's changed fields for update. Unchanged people are skipped on commit.
+     */
+    public void update(Person person) {
+        updatedPeople.add(person);
+    }
+
+    public void delete(Person person) {
+        deletedPeople.add(person);
+    }
+
+    public void delete(Address address) {
+        deletedAddresses.add(address);
+    }
+
+    public boolean isEmpty() {
+        return newPeople.isEmpty() && newAddresses.isEmpty() && updatedPeople.isEmpty() && deletedPeople.isEmpty()
+                && deletedAddresses.isEmpty();
+    }
+
+    /**
+     * Flushes the queued work in one transaction and empties the queue. Without auto-commit, the work joins the
+     * caller's open transaction instead and isn't committed.
+     */
+    public void commit() {
+        if (isEmpty()) return;
+        try (ConnectionLease lease = people.connections.borrow()) {
+            Connection connection = lease.connection();
+            if (!connection.getAutoCommit()) {
+                Savepoint savepoint = connection.setSavepoint();
+                try {
+                    flush();
+                } catch (RuntimeException e) {
+                    connection.rollback(savepoint);
+                    throw e;
+                }
+                connection.releaseSavepoint(savepoint);
+                return;
+            }
+            connection.setAutoCommit(false);
+            try {
+                flush();
+                connection.commit();
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Unit of work rolled back.", e);
+        } finally {
+            clear();
+        }
+    }
+
+    /**
+     * Discards the queued work.
+     */
+    public void clear() {
+        newPeople.clear();
+        newAddresses.clear();
+        updatedPeople.clear();
+        deletedPeople.clear();
+        deletedAddresses.clear();
+    }
+
+    // Every repository call borrows the same lease as commit, so runs in its transaction.
+    private void flush() {
+        Queued<Address> addressesToSave = new Queued<>();
+        newAddresses.items.forEach(addressesToSave::add);
+        Stream.concat(newPeople.items.stream(), updatedPeople.items.stream())
+                .flatMap(person -> Stream.of(person.getHomeAddress(), person.getBusinessAddress()))
+                .flatMap(address -> address.filter(a -> a.id() == null).stream())
+                .forEach(addressesToSave::add);
+        if (!addressesToSave.isEmpty()) addresses.saveAll(addressesToSave.items);
+
+        // Saving a generation also saves the children of its people, so later generations only hold people
+        // whose parent was saved before this unit.
+        for (List<Person> generation : byGeneration(newPeople.items).values()) {
+            List<Person> unsaved = generation.stream().filter(p -> p.getId() == null).toList();
+            if (!unsaved.isEmpty()) people.saveAll(unsaved);
+        }
+
+        if (!updatedPeople.isEmpty()) people.updateAll(updatedPeople.items);
+
+        // Unsaved people have no row to delete.
+        List<Person> toDelete = deletedPeople.items.stream().filter(p -> p.getId() != null).toList();
+        Map<Long, Integer> depths = people.depthsAmong(toDelete.stream().map(Person::getId).toList());
+        Map<Integer, List<Person>> deletions = new TreeMap<>(Comparator.reverseOrder());
+        for (Person person : toDelete) {
+            deletions.computeIfAbsent(depths.getOrDefault(person.getId(), 0), d -> new ArrayList<>()).add(person);
+        }
+        deletions.values().forEach(generation -> people.delete(generation.toArray(Person[]::new)));
+
+        if (!deletedAddresses.isEmpty()) addresses.delete(deletedAddresses.items.toArray(Address[]::new));
+    }
+
+    private static Map<Integer, List<Person>> byGeneration(Collection<Person> people) {
+        Map<Integer, List<Person>> generations = new TreeMap<>();
+        for (Person person : people) {
+            int depth = 0;
+            for (Person p = person; p.getParent().isPresent(); p = p.getParent().get()) depth++;
+            generations.computeIfAbsent(depth, d -> new ArrayList<>()).add(person);
+        }
+        return generations;
+    }
+
+    /**
+     * Entities in the order they were queued, each instance once. Entity equality can't be used: unsaved people
+     * with the same name are equal, as are unsaved addresses with the same content.
+     */
+    private static final class Queued<E> {
+        private final List<E> items = new ArrayList<>();
+        private final Set<E> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        private void add(E item) {
+            if (seen.add(item)) items.add(item);
+        }
+
+        private boolean isEmpty() {
+            return items.isEmpty();
+        }
+
+        private void clear() {
+            items.clear();
+            seen.clear();
+        }
+    }
+}
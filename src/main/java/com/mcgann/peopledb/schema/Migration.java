@@ -0,0 +1,14 @@
+package com.mcgann.peopledb.schema;
+
+import java.util.List;
+
+/**
+ * One step of the schema, applied once in version order. Statements should be idempotent (IF NOT EXISTS), so a
+ * migration interrupted before its version was recorded can simply run again.
+ */
+public record Migration(int version, String description, List<String> statements) {
+
+    public Migration(int version, String description, String... statements) {
+        this(version, description, List.of(statements));
+    }
+}
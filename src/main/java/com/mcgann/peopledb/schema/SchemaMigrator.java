@@ -0,0 +1,127 @@
+package com.mcgann.peopledb.schema;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+/**
+ * Brings a database up to the latest version of the PEOPLE and ADDRESSES schema, recording applied versions in
+ * SCHEMA_VERSION. On an up-to-date database, migrate() costs two statements.
+ * <p>
+ * The join columns are indexed before their foreign keys are added, so H2 reuses the named indexes for the
+ * constraints instead of creating its own.
+ */
+public final class SchemaMigrator {
+    public static final String CREATE_VERSION_TABLE_DDL = """
+            CREATE TABLE IF NOT EXISTS SCHEMA_VERSION (
+            VERSION INT PRIMARY KEY, DESCRIPTION VARCHAR(255), APPLIED_AT TIMESTAMP DEFAULT CURRENT_TIMESTAMP)""";
+    public static final String CURRENT_VERSION_SQL = "SELECT COALESCE(MAX(VERSION), 0) FROM SCHEMA_VERSION";
+    public static final String RECORD_VERSION_SQL = "INSERT INTO SCHEMA_VERSION (VERSION, DESCRIPTION) VALUES (?, ?)";
+
+    public static final List<Migration> MIGRATIONS = List.of(
+            new Migration(1, "Create people and addresses with join indexes",
+                    """
+                    CREATE TABLE IF NOT EXISTS ADDRESSES (ID BIGINT AUTO_INCREMENT PRIMARY KEY,
+                    STREET_ADDRESS VARCHAR(255), ADDRESS2 VARCHAR(255), CITY VARCHAR(255), STATE VARCHAR(255),
+                    POSTCODE VARCHAR(255), COUNTY VARCHAR(255), REGION VARCHAR(255), COUNTRY VARCHAR(255))""",
+                    """
+                    CREATE TABLE IF NOT EXISTS PEOPLE (ID BIGINT AUTO_INCREMENT PRIMARY KEY, FIRST_NAME VARCHAR(255),
+                    LAST_NAME VARCHAR(255), DOB TIMESTAMP, SALARY DECIMAL(15,2), EMAIL VARCHAR(255),
+                    HOME_ADDRESS BIGINT, BUSINESS_ADDRESS BIGINT, SPOUSE BIGINT, PARENT_ID BIGINT)""",
+                    "CREATE INDEX IF NOT EXISTS PEOPLE_PARENT_ID_IX ON PEOPLE (PARENT_ID)",
+                    "CREATE INDEX IF NOT EXISTS PEOPLE_HOME_ADDRESS_IX ON PEOPLE (HOME_ADDRESS)",
+                    "CREATE INDEX IF NOT EXISTS PEOPLE_BUSINESS_ADDRESS_IX ON PEOPLE (BUSINESS_ADDRESS)",
+                    "CREATE INDEX IF NOT EXISTS PEOPLE_SPOUSE_IX ON PEOPLE (SPOUSE)",
+                    """
+                    ALTER TABLE PEOPLE ADD CONSTRAINT IF NOT EXISTS PEOPLE_PARENT_FK
+                    FOREIGN KEY (PARENT_ID) REFERENCES PEOPLE (ID)""",
+                    """
+                    ALTER TABLE PEOPLE ADD CONSTRAINT IF NOT EXISTS PEOPLE_HOME_ADDRESS_FK
+                    FOREIGN KEY (HOME_ADDRESS) REFERENCES ADDRESSES (ID)""",
+                    """
+                    ALTER TABLE PEOPLE ADD CONSTRAINT IF NOT EXISTS PEOPLE_BUSINESS_ADDRESS_FK
+                    FOREIGN KEY (BUSINESS_ADDRESS) REFERENCES ADDRESSES (ID)""",
+                    """
+                    ALTER TABLE PEOPLE ADD CONSTRAINT IF NOT EXISTS PEOPLE_SPOUSE_FK
+                    FOREIGN KEY (SPOUSE) REFERENCES PEOPLE (ID)"""),
+            new Migration(2, "Add address content hash for deduplication",
+                    "ALTER TABLE ADDRESSES ADD COLUMN IF NOT EXISTS CONTENT_HASH CHAR(64)",
+                    "CREATE UNIQUE INDEX IF NOT EXISTS ADDRESSES_CONTENT_HASH_UX ON ADDRESSES (CONTENT_HASH)"),
+            new Migration(3, "Index finder columns",
+                    "CREATE INDEX IF NOT EXISTS PEOPLE_EMAIL_IX ON PEOPLE (EMAIL)",
+                    "CREATE INDEX IF NOT EXISTS PEOPLE_LAST_NAME_IX ON PEOPLE (LAST_NAME)",
+                    "CREATE INDEX IF NOT EXISTS ADDRESSES_REGION_CITY_IX ON ADDRESSES (REGION, CITY)"));
+
+    private final Connection connection;
+    private final List<Migration> migrations;
+
+    public SchemaMigrator(Connection connection) {
+        this(connection, MIGRATIONS);
+    }
+
+    SchemaMigrator(Connection connection, List<Migration> migrations) {
+        this.connection = connection;
+        this.migrations = migrations;
+    }
+
+    /**
+     * Applies the migrations newer than the database's version, each recorded in its own transaction.
+     * The connection's auto-commit setting is restored afterwards.
+     * @return The number of migrations applied.
+     */
+    public int migrate() {
+        try {
+            int current = currentVersion();
+            List<Migration> pending = migrations.stream().filter(m -> m.version() > current).toList();
+            if (pending.isEmpty()) return 0;
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try {
+                for (Migration migration : pending) {
+                    apply(migration);
+                }
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+            return pending.size();
+        } catch (SQLException e) {
+            throw new RuntimeException("Unable to migrate schema.", e);
+        }
+    }
+
+    /**
+     * @return The latest applied migration's version, or 0 for an empty database.
+     */
+    public int currentVersion() throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute(CREATE_VERSION_TABLE_DDL);
+            try (ResultSet rs = stmt.executeQuery(CURRENT_VERSION_SQL)) {
+                rs.next();
+                return rs.getInt(1);
+            }
+        }
+    }
+
+    public int latestVersion() {
+        return migrations.stream().mapToInt(Migration::version).max().orElse(0);
+    }
+
+    private void apply(Migration migration) throws SQLException {
+        try (Statement stmt = connection.createStatement();
+             PreparedStatement record = connection.prepareStatement(RECORD_VERSION_SQL)) {
+            for (String sql : migration.statements()) {
+                stmt.execute(sql);
+            }
+            record.setInt(1, migration.version());
+            record.setString(2, migration.description());
+            record.executeUpdate();
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw new SQLException("Migration " + migration.version() + " failed: " + migration.description(), e);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.mcgann.peopledb.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class EntityCacheTest {
+
+    private final AtomicLong now = new AtomicLong();
+    private final EntityCache<String> cache = new EntityCache<>(2, Duration.ofNanos(100), now::get);
+
+    @Test
+    public void countsHitsAndMisses() {
+        cache.put(1, "one");
+        assertThat(cache.get(1)).isEqualTo("one");
+        assertThat(cache.get(2)).isNull();
+        assertThat(cache.stats()).isEqualTo(new CacheStats(1, 1, 0, 1));
+        assertThat(cache.stats().hitRate()).isEqualTo(0.5);
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedWhenFull() {
+        cache.put(1, "one");
+        cache.put(2, "two");
+        cache.get(1);
+        cache.put(3, "three");
+        assertThat(cache.get(2)).isNull();
+        assertThat(cache.get(1)).isEqualTo("one");
+        assertThat(cache.stats().evictions()).isEqualTo(1);
+    }
+
+    @Test
+    public void expiresEntriesAfterTimeToLive() {
+        cache.put(1, "one");
+        now.set(101);
+        assertThat(cache.get(1)).isNull();
+        assertThat(cache.stats()).isEqualTo(new CacheStats(0, 1, 1, 0));
+    }
+
+    @Test
+    public void canInvalidateMatchingEntries() {
+        cache.put(1, "one");
+        cache.put(2, "two");
+        cache.invalidateIf(s -> s.startsWith("o"));
+        assertThat(cache.get(1)).isNull();
+        assertThat(cache.get(2)).isEqualTo("two");
+    }
+
+    @Test
+    public void canInvalidateEntriesByIndexedKey() {
+        EntityCache<List<Long>> parents = new EntityCache<>(2, Duration.ofNanos(100), now::get);
+        parents.put(1, List.of(10L, 11L));
+        parents.indexBy(children -> children);
+        parents.put(2, List.of(20L));
+
+        parents.invalidateByKey(11);
+        assertThat(parents.get(1)).isNull();
+        assertThat(parents.get(2)).containsExactly(20L);
+
+        parents.put(3, List.of(30L));
+        parents.put(4, List.of(20L));
+        parents.invalidateByKey(20);
+        assertThat(parents.get(4)).isNull();
+        assertThat(parents.get(3)).containsExactly(30L);
+    }
+}
@@ -0,0 +1,133 @@
+package com.mcgann.peopledb.connection;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ConnectionPoolTest {
+
+    private ConnectionPool pool;
+
+    @AfterEach
+    void tearDown() {
+        pool.close();
+    }
+
+    private ConnectionPool pool(PoolConfig config) {
+        pool = new ConnectionPool(() -> DriverManager.getConnection("jdbc:h2:mem:"), config);
+        return pool;
+    }
+
+    @Test
+    public void reusesReleasedConnection() throws SQLException {
+        pool(PoolConfig.defaults());
+        ConnectionLease first = pool.borrow();
+        var connection = first.connection();
+        first.close();
+        try (ConnectionLease second = pool.borrow()) {
+            assertThat(second.connection()).isSameAs(connection);
+        }
+        assertThat(pool.metrics().created()).isEqualTo(1);
+        assertThat(pool.metrics().borrows()).isEqualTo(2);
+    }
+
+    @Test
+    public void nestedBorrowOnSameThreadJoinsLease() throws SQLException {
+        pool(PoolConfig.defaults().withMaximumSize(1));
+        try (ConnectionLease outer = pool.borrow()) {
+            try (ConnectionLease inner = pool.borrow()) {
+                assertThat(inner.connection()).isSameAs(outer.connection());
+            }
+            assertThat(pool.metrics().active()).isEqualTo(1);
+        }
+        assertThat(pool.metrics().active()).isZero();
+        assertThat(pool.metrics().idle()).isEqualTo(1);
+    }
+
+    @Test
+    public void leaseReleasedOnAnotherThreadIsNotJoined() throws Exception {
+        pool(PoolConfig.defaults().withMaximumSize(2));
+        ConnectionLease first = pool.borrow();
+        CompletableFuture.runAsync(first::close).join();
+        // Most recently used first, so the other thread gets the connection the first lease had.
+        ConnectionLease other = CompletableFuture.supplyAsync(() -> {
+            try {
+                return pool.borrow();
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
+        }).join();
+        assertThat(other.connection()).isSameAs(first.connection());
+
+        try (ConnectionLease second = pool.borrow()) {
+            assertThat(second).isNotSameAs(first);
+            assertThat(second.connection()).isNotSameAs(other.connection());
+        }
+        first.close();
+        assertThat(pool.metrics().active()).isEqualTo(1);
+        other.close();
+        assertThat(pool.metrics().active()).isZero();
+    }
+
+    @Test
+    public void timesOutWhenExhausted() throws Exception {
+        pool(PoolConfig.defaults().withMaximumSize(1).withBorrowTimeout(Duration.ofMillis(50)));
+        try (ConnectionLease ignored = pool.borrow()) {
+            CompletableFuture<Void> otherThread = CompletableFuture.runAsync(() -> {
+                assertThatThrownBy(() -> pool.borrow()).isInstanceOf(SQLTransientConnectionException.class);
+            });
+            otherThread.get();
+        }
+        assertThat(pool.metrics().timeouts()).isEqualTo(1);
+    }
+
+    @Test
+    public void replacesConnectionThatFailsValidation() throws SQLException {
+        pool(PoolConfig.defaults().withValidationInterval(Duration.ZERO));
+        ConnectionLease first = pool.borrow();
+        var connection = first.connection();
+        first.close();
+        connection.close();
+        try (ConnectionLease second = pool.borrow()) {
+            assertThat(second.connection()).isNotSameAs(connection);
+            assertThat(second.connection().isValid(1)).isTrue();
+        }
+        assertThat(pool.metrics().validationFailures()).isEqualTo(1);
+    }
+
+    @Test
+    public void evictsIdleConnections() throws Exception {
+        pool(PoolConfig.defaults().withMinimumIdle(0).withIdleTimeout(Duration.ofMillis(20)));
+        pool.borrow().close();
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (pool.metrics().idle() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(pool.metrics().idle()).isZero();
+        assertThat(pool.metrics().evicted()).isEqualTo(1);
+    }
+
+    @Test
+    public void rollsBackUncommittedWorkOnRelease() throws SQLException {
+        pool(PoolConfig.defaults().withMaximumSize(1));
+        try (ConnectionLease lease = pool.borrow()) {
+            lease.connection().createStatement().execute("CREATE TABLE T (ID INT)");
+            lease.connection().setAutoCommit(false);
+            lease.connection().createStatement().execute("INSERT INTO T VALUES (1)");
+        }
+        try (ConnectionLease lease = pool.borrow()) {
+            assertThat(lease.connection().getAutoCommit()).isTrue();
+            var rs = lease.connection().createStatement().executeQuery("SELECT COUNT(*) FROM T");
+            rs.next();
+            assertThat(rs.getInt(1)).isZero();
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.mcgann.peopledb.io;
+
+import com.mcgann.peopledb.exception.UnableToImportException;
+import com.mcgann.peopledb.model.Person;
+import com.mcgann.peopledb.repository.PeopleRepository;
+import com.mcgann.peopledb.schema.SchemaMigrator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CsvImporterTest {
+
+    private Connection connection;
+    private PeopleRepository repo;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        connection = DriverManager.getConnection("jdbc:h2:mem:");
+        new SchemaMigrator(connection).migrate();
+        connection.setAutoCommit(false);
+        repo = new PeopleRepository(connection);
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        repo.close();
+        connection.close();
+    }
+
+    @Test
+    public void canImportCsv(@TempDir Path directory) throws IOException {
+        Path file = directory.resolve("people.csv");
+        Files.writeString(file, """
+                FIRST_NAME,LAST_NAME,DOB,SALARY,EMAIL,HOME_STREET_ADDRESS,HOME_CITY,HOME_REGION
+                "Smith, Jr",John,1980-11-15,73000.28,john@smith.com,1 Main St,Leeds,northeast
+                Jane,Doe,1985-02-01T10:00:00Z,,,1 Main St,Leeds,NORTHEAST
+                Bad,Row,not-a-date,,,,,
+                Sam,Lee,1990-05-05,,"sam@""lee"".com",,,
+                """);
+
+        assertThatThrownBy(() -> new CsvImporter(repo).importCsv(file))
+                .isInstanceOf(UnableToImportException.class).hasMessageContaining("line 4");
+        assertThat(repo.count()).isZero();
+
+        List<ImportStats> progress = new ArrayList<>();
+        ImportConfig config = ImportConfig.defaults().withBatchSize(2).withParserThreads(2).withQueueCapacity(1)
+                .withBadRowPolicy(BadRowPolicy.SKIP);
+        ImportStats stats = new CsvImporter(repo, config).importCsv(file, progress::add);
+
+        assertThat(stats.rowsRead()).isEqualTo(4);
+        assertThat(stats.rowsImported()).isEqualTo(3);
+        assertThat(stats.rowsRejected()).isEqualTo(1);
+        assertThat(stats.rejected()).extracting(RejectedRow::line).containsExactly(4L);
+        assertThat(stats.addressesSaved()).isEqualTo(1);
+        assertThat(progress).hasSize(2);
+        List<Person> people = repo.findAll(0, 10);
+        assertThat(people).extracting(Person::getFirstName).containsExactly("Smith, Jr", "Jane", "Sam");
+        assertThat(people.get(0).getSalary()).isEqualByComparingTo("73000.28");
+        assertThat(people.get(0).getHomeAddress().get().id())
+                .isEqualTo(people.get(1).getHomeAddress().get().id());
+        assertThat(people.get(1).getDob()).isEqualTo(ZonedDateTime.of(1985, 2, 1, 10, 0, 0, 0, ZoneId.of("+0")));
+        assertThat(repo.findByEmail("sam@\"lee\".com")).extracting(Person::getFirstName).containsExactly("Sam");
+        assertThat(people.get(2).getHomeAddress()).isEmpty();
+    }
+
+    @Test
+    public void failedImportLeavesNoReaderThread(@TempDir Path directory) throws IOException, InterruptedException {
+        Path file = directory.resolve("people.csv");
+        StringBuilder csv = new StringBuilder("FIRST_NAME,LAST_NAME,DOB\n");
+        for (int i = 0; i < 100; i++) {
+            csv.append("person").append(i).append(",Smith,1980-01-01\n");
+        }
+        Files.writeString(file, csv);
+        ImportConfig config = ImportConfig.defaults().withBatchSize(1).withParserThreads(1).withQueueCapacity(1);
+
+        assertThatThrownBy(() -> new CsvImporter(repo, config).importCsv(file, stats -> {
+            throw new IllegalStateException("Progress failed.");
+        })).isInstanceOf(IllegalStateException.class);
+
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (readerThreadsAlive() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(readerThreadsAlive()).isFalse();
+    }
+
+    private static boolean readerThreadsAlive() {
+        return Thread.getAllStackTraces().keySet().stream()
+                .anyMatch(thread -> thread.isAlive() && thread.getName().matches("csv-import-\\d+-reader-\\d+"));
+    }
+
+    @Test
+    public void forgetsLeastRecentlyUsedAddresses(@TempDir Path directory) throws IOException {
+        Path file = directory.resolve("people.csv");
+        Files.writeString(file, """
+                FIRST_NAME,LAST_NAME,DOB,HOME_STREET_ADDRESS,HOME_REGION
+                A,Smith,1980-01-01,1 Main St,WEST
+                B,Smith,1980-01-01,1 Main St,WEST
+                C,Smith,1980-01-01,2 Main St,WEST
+                D,Smith,1980-01-01,1 Main St,WEST
+                """);
+
+        ImportStats stats = new CsvImporter(repo, ImportConfig.defaults().withSharedAddresses(1)).importCsv(file);
+        assertThat(stats.addressesSaved()).isEqualTo(3);
+
+        repo.getAddressRepository().enableDeduplication();
+        new CsvImporter(repo, ImportConfig.defaults().withSharedAddresses(1)).importCsv(file);
+        List<Person> people = repo.findAll(0, 10);
+        assertThat(people.get(4).getHomeAddress().get().id()).isEqualTo(people.get(7).getHomeAddress().get().id());
+    }
+}
@@ -0,0 +1,83 @@
+package com.mcgann.peopledb.io;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CsvRecordReaderTest {
+    // The reader's byte and char buffer size.
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void splitsRecordsOnLineBreaks() throws IOException {
+        assertThat(read("a,b\nc,d\n")).containsExactly("a,b", "c,d");
+        assertThat(read("a,b\r\nc,d")).containsExactly("a,b", "c,d");
+        assertThat(read("")).isEmpty();
+    }
+
+    @Test
+    public void skipsByteOrderMark() throws IOException {
+        assertThat(read("\ufeffFIRST_NAME,LAST_NAME\r\nJohn,Smith\r\n")).containsExactly("FIRST_NAME,LAST_NAME",
+                "John,Smith");
+    }
+
+    @Test
+    public void keepsQuotedLineBreaks() throws IOException {
+        Path file = write("\"a\r\nb\",c\r\nd\n");
+        try (CsvRecordReader records = new CsvRecordReader(file)) {
+            assertThat(records.next()).isEqualTo("\"a\r\nb\",c");
+            assertThat(records.line()).isEqualTo(1);
+            assertThat(records.next()).isEqualTo("d");
+            assertThat(records.line()).isEqualTo(3);
+            assertThat(records.next()).isNull();
+        }
+    }
+
+    @Test
+    public void keepsQuotedLineBreaksAcrossBuffers() throws IOException {
+        for (int before = BUFFER_SIZE - 3; before <= BUFFER_SIZE + 1; before++) {
+            String quoted = "\"" + "x".repeat(before - 1) + "\r\n" + "y\"";
+            assertThat(read(quoted + ",z\r\nnext\r\n")).containsExactly(quoted + ",z", "next");
+        }
+    }
+
+    @Test
+    public void decodesCharactersSplitAcrossReads() throws IOException {
+        for (String c : List.of("\u00e9", "\u20ac", "\ud83d\ude00")) {
+            for (int before = BUFFER_SIZE - 4; before <= BUFFER_SIZE; before++) {
+                String record = "x".repeat(before) + c + "y";
+                assertThat(read(record + "\nnext\n")).containsExactly(record, "next");
+            }
+        }
+    }
+
+    @Test
+    public void returnsUnclosedQuoteAtEndOfFile() throws IOException {
+        assertThat(read("a,\"b\nc\n")).containsExactly("a,\"b\nc\n");
+    }
+
+    private List<String> read(String content) throws IOException {
+        List<String> records = new ArrayList<>();
+        try (CsvRecordReader reader = new CsvRecordReader(write(content))) {
+            for (String record = reader.next(); record != null; record = reader.next()) {
+                records.add(record);
+            }
+        }
+        return records;
+    }
+
+    private Path write(String content) throws IOException {
+        return Files.write(directory.resolve("records.csv"), content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,37 @@
+package com.mcgann.peopledb.io;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PeopleCsvTest {
+
+    @Test
+    public void splitsFields() {
+        assertThat(PeopleCsv.fields("a,b,c")).containsExactly("a", "b", "c");
+        assertThat(PeopleCsv.fields("a,,\"\"")).containsExactly("a", null, "");
+        assertThat(PeopleCsv.fields("")).containsExactly((String) null);
+    }
+
+    @Test
+    public void unquotesFields() {
+        assertThat(PeopleCsv.fields("\"Smith, Jr\",\"say \"\"hi\"\"\",x"))
+                .containsExactly("Smith, Jr", "say \"hi\"", "x");
+        assertThat(PeopleCsv.fields("\"a\r\nb\",\"\u20ac\ud83d\ude00\""))
+                .containsExactly("a\r\nb", "\u20ac\ud83d\ude00");
+    }
+
+    @Test
+    public void splitsFieldsOfRecordsLongerThanReadBuffer() {
+        String field = "x".repeat((1 << 16) + 10);
+        assertThat(PeopleCsv.fields("\"" + field + "\n" + field + "\",y"))
+                .containsExactly(field + "\n" + field, "y");
+    }
+
+    @Test
+    public void rejectsUnclosedQuote() {
+        assertThatThrownBy(() -> PeopleCsv.fields("a,\"b\nc\n"))
+                .isInstanceOf(IllegalArgumentException.class).hasMessage("Unclosed quote.");
+    }
+}
@@ -0,0 +1,113 @@
+package com.mcgann.peopledb.io;
+
+import com.mcgann.peopledb.exception.UnableToExportException;
+import com.mcgann.peopledb.model.Address;
+import com.mcgann.peopledb.model.Person;
+import com.mcgann.peopledb.model.Region;
+import com.mcgann.peopledb.repository.PeopleRepository;
+import com.mcgann.peopledb.schema.SchemaMigrator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PeopleExporterTest {
+
+    private Connection connection;
+    private PeopleRepository repo;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        connection = DriverManager.getConnection("jdbc:h2:mem:");
+        new SchemaMigrator(connection).migrate();
+        connection.setAutoCommit(false);
+        repo = new PeopleRepository(connection);
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        repo.close();
+        connection.close();
+    }
+
+    @Test
+    public void canExportPeopleAndImportTheCsv(@TempDir Path directory) throws IOException {
+        Person john = new Person("Smith, Jr", "J\u00f6hn", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("+0")));
+        john.setSalary(new BigDecimal("73000.28"));
+        john.setEmail("john@smith.com");
+        john.setHomeAddress(new Address(null, "1 Main St", null, "Leeds", "WA", "90210", "United States",
+                "Fulton County", Region.NORTHEAST));
+        Person child = new Person("Johnny", "Smith", ZonedDateTime.of(2010, 1, 1, 0, 0, 0, 0, ZoneId.of("+0")));
+        john.addChild(child);
+        repo.save(john);
+        Path csv = directory.resolve("people.csv");
+        Path jsonLines = directory.resolve("people.jsonl.gz");
+
+        ExportStats stats = new PeopleExporter(repo).export(csv);
+        new PeopleExporter(repo, ExportConfig.defaults().withFormat(ExportFormat.JSON_LINES).withGzip(true))
+                .export(jsonLines);
+
+        assertThat(stats.rowsExported()).isEqualTo(2);
+        assertThat(stats.bytesWritten()).isEqualTo(Files.size(csv));
+        List<String> lines = Files.readAllLines(csv);
+        assertThat(lines.get(0)).startsWith("ID,FIRST_NAME,LAST_NAME,DOB,SALARY,EMAIL,PARENT_ID,SPOUSE_ID,HOME_");
+        assertThat(lines.get(1)).startsWith(john.getId() + ",\"Smith, Jr\",J\u00f6hn,1980-11-15T15:15:00Z,73000.28,")
+                .contains(",1 Main St,,Leeds,");
+        assertThat(lines.get(2)).startsWith(child.getId() + ",Johnny,Smith,2010-01-01T00:00:00Z,")
+                .contains("," + john.getId() + ",");
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(jsonLines))) {
+            String json = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            assertThat(json.lines()).hasSize(2);
+            assertThat(json).contains("{\"ID\":" + john.getId() + ",\"FIRST_NAME\":\"Smith, Jr\",")
+                    .contains("\"SALARY\":73000.28,").contains("\"PARENT_ID\":null,")
+                    .contains("\"PARENT_ID\":" + john.getId() + ",").contains("\"BUSINESS_REGION\":null}");
+        }
+
+        ImportStats imported = new CsvImporter(repo).importCsv(csv);
+
+        assertThat(imported.rowsImported()).isEqualTo(2);
+        assertThat(imported.addressesSaved()).isEqualTo(1);
+        Person copy = repo.findAll(child.getId(), 10).get(0);
+        assertThat(copy.getFirstName()).isEqualTo("Smith, Jr");
+        assertThat(copy.getLastName()).isEqualTo("J\u00f6hn");
+        assertThat(copy.getDob()).isEqualTo(john.getDob());
+        assertThat(copy.getSalary()).isEqualByComparingTo("73000.28");
+        assertThat(copy.getHomeAddress().get()).usingRecursiveComparison().ignoringFields("id")
+                .isEqualTo(john.getHomeAddress().get());
+    }
+
+    @Test
+    public void deletesPartialFileWhenPeopleCantBeRead(@TempDir Path directory) throws IOException, SQLException {
+        Path csv = directory.resolve("people.csv");
+        Files.writeString(csv, "previous export\n");
+        repo.save(new Person("John", "Smith", ZonedDateTime.now()));
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("DROP TABLE PEOPLE CASCADE");
+        }
+
+        assertThatThrownBy(() -> new PeopleExporter(repo).export(csv))
+                .isInstanceOf(UnableToExportException.class).hasMessageContaining(csv.toString());
+        assertThat(Files.readString(csv)).isEqualTo("previous export\n");
+        try (var files = Files.list(directory)) {
+            assertThat(files).containsExactly(csv);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.mcgann.peopledb.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LatencyHistogramTest {
+
+    @Test
+    public void reportsCountMeanAndMax() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(100);
+        histogram.record(300);
+        assertThat(histogram.count()).isEqualTo(2);
+        assertThat(histogram.meanNanos()).isEqualTo(200.0);
+        assertThat(histogram.maxNanos()).isEqualTo(300);
+    }
+
+    @Test
+    public void percentilesAreWithinAFactorOfTwo() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i * 1_000L);
+        }
+        assertThat(histogram.percentileNanos(50)).isBetween(50_000L, 100_000L);
+        assertThat(histogram.percentileNanos(99)).isBetween(99_000L, 100_000L);
+        assertThat(histogram.percentileNanos(100)).isEqualTo(100_000L);
+    }
+
+    @Test
+    public void emptyHistogramReportsZero() {
+        assertThat(new LatencyHistogram().percentileNanos(99)).isZero();
+    }
+}
@@ -2,6 +2,7 @@ package com.mcgann.peopledb.model;
 
 import org.junit.jupiter.api.Test;
 
+import java.math.BigDecimal;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 
@@ -27,4 +28,20 @@ class PersonTest {
         assertThat(p1).isNotEqualTo(p2);
     }
 
-}
\ No newline at end of file
+    @Test
+    public void tracksChangedFieldsUntilMarkedClean() {
+        Person person = new Person("p1", "smith", ZonedDateTime.now());
+        assertThat(person.getChangedFields()).containsExactly(PersonField.FIRST_NAME, PersonField.LAST_NAME,
+                PersonField.DOB, PersonField.SALARY);
+        person.setSpouseId(7L);
+        assertThat(person.getChangedFields()).contains(PersonField.SPOUSE).doesNotContain(PersonField.EMAIL);
+        person.markClean();
+        assertThat(person.hasChanges()).isFalse();
+
+        person.setFirstName("p1");
+        person.setSalary(new BigDecimal("100"));
+        person.setEmail("p1@example.com");
+        assertThat(person.getChangedFields()).containsExactly(PersonField.SALARY, PersonField.EMAIL);
+    }
+
+}
@@ -1,37 +1,69 @@
 package com.mcgann.peopledb.repository;
 
+import com.mcgann.peopledb.cache.EntityCache;
+import com.mcgann.peopledb.connection.ConnectionPool;
+import com.mcgann.peopledb.connection.PoolConfig;
+import com.mcgann.peopledb.exception.UnableToSaveException;
+import com.mcgann.peopledb.metrics.GenerationStats;
+import com.mcgann.peopledb.metrics.RepositoryMetrics;
 import com.mcgann.peopledb.model.Address;
+import com.mcgann.peopledb.model.CrudOperation;
 import com.mcgann.peopledb.model.Person;
 import com.mcgann.peopledb.model.Region;
+import com.mcgann.peopledb.model.SalaryStats;
+import com.mcgann.peopledb.schema.SchemaMigrator;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.io.IOException;
 import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.time.Duration;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.entry;
+import static org.assertj.core.api.Assertions.tuple;
 
 public class PeopleRepositoryTest {
 
+    private static final String DATABASE_URL = "jdbc:h2:mem:peopledb";
+
     private Connection connection;
     private PeopleRepository repo;
 
     @BeforeEach
     void setUp() throws SQLException {
-        connection = DriverManager.getConnection("PUT DATABASE PATH HERE");
+        connection = DriverManager.getConnection(DATABASE_URL);
+        new SchemaMigrator(connection).migrate();
         connection.setAutoCommit(false);
         repo = new PeopleRepository(connection);
     }
 
     @AfterEach
     void tearDown() throws SQLException {
+        repo.close();
         connection.close();
     }
 
@@ -128,6 +160,19 @@ public class PeopleRepositoryTest {
         assertThat(foundPerson).isEqualTo(savedPerson);
     }
 
+    @Test
+    public void canFindPersonEmail() {
+        Person john = new Person("John", "Smith", ZonedDateTime.now());
+        john.setEmail("john@example.com");
+        john.addChild(new Person("Johnny", "Smith", ZonedDateTime.now()));
+        john.getChildren().iterator().next().setEmail("johnny@example.com");
+        repo.save(john);
+        Person found = repo.findById(john.getId()).get();
+        assertThat(found.getEmail()).isEqualTo("john@example.com");
+        assertThat(found.getChildren().iterator().next().getEmail()).isEqualTo("johnny@example.com");
+        assertThat(repo.findAll(0, 10)).extracting(Person::getEmail).contains("john@example.com", "johnny@example.com");
+    }
+
     @Test
     public void canFindPersonByIdWithHomeAddress() throws SQLException {
         Person john = new Person("John", "Smith", ZonedDateTime.of(1980, 11,
@@ -209,6 +254,199 @@ public class PeopleRepositoryTest {
         assertThat(endCount).isEqualTo(startCount - 2);
     }
 
+    @Test
+    public void canDeleteAllByIdInChunks() {
+        List<Person> people = repo.saveAll(IntStream.range(0, 25)
+                .mapToObj(i -> new Person("test" + i, "123", ZonedDateTime.now())).toList());
+        List<Long> ids = new ArrayList<>(people.stream().map(Person::getId).toList());
+        ids.add(-1L);
+        long startCount = repo.count();
+
+        assertThat(repo.deleteAllById(ids, 10)).isEqualTo(25);
+        assertThat(repo.count()).isEqualTo(startCount - 25);
+        assertThat(repo.deleteAllById(List.of())).isZero();
+    }
+
+    @Test
+    public void canCascadeDeleteSubtreeAndOrphanedAddresses() {
+        Person root = new Person("root", "123", ZonedDateTime.now());
+        root.setHomeAddress(new Address(null, "1 Root Road", null, "Leeds", "WA", "90210", "United States",
+                "Fulton County", Region.WEST));
+        Person child = new Person("child", "123", ZonedDateTime.now());
+        child.setHomeAddress(new Address(null, "2 Shared Street", null, "Leeds", "WA", "90210", "United States",
+                "Fulton County", Region.WEST));
+        Person grandchild = new Person("grandchild", "123", ZonedDateTime.now());
+        child.addChild(grandchild);
+        root.addChild(child);
+        repo.save(root);
+        Person neighbour = new Person("neighbour", "123", ZonedDateTime.now());
+        neighbour.setHomeAddress(child.getHomeAddress().get());
+        neighbour.setSpouseId(grandchild.getId());
+        repo.save(neighbour);
+        long startCount = repo.count();
+
+        repo.setDeleteMode(DeleteMode.CASCADE);
+        RepositoryMetrics metrics = new RepositoryMetrics();
+        repo.setListener(metrics);
+        repo.delete(new Person("unsaved", "123", ZonedDateTime.now()));
+        assertThat(repo.delete(new Person("unsaved", "123", ZonedDateTime.now()),
+                new Person("unsaved", "456", ZonedDateTime.now()))).isZero();
+        repo.delete(root);
+
+        assertThat(metrics.stats(CrudOperation.CLEAR_SPOUSES).executeNanos()).isPositive();
+        assertThat(metrics.stats(CrudOperation.CLEAR_SPOUSES).rowsAffected()).isEqualTo(1);
+        assertThat(repo.count()).isEqualTo(startCount - 3);
+        assertThat(repo.findById(grandchild.getId())).isEmpty();
+        Person foundNeighbour = repo.findById(neighbour.getId()).get();
+        assertThat(foundNeighbour.getSpouseId()).isEmpty();
+        AddressRepository addresses = repo.getAddressRepository();
+        assertThat(addresses.findById(root.getHomeAddress().get().id())).isEmpty();
+        assertThat(addresses.findById(foundNeighbour.getHomeAddress().get().id())).isPresent();
+    }
+
+    @Test
+    public void canAggregatePeople() {
+        Address leeds = new Address(null, "123 Birch Street", null, "Leeds", "WA", "90210", "United States",
+                "Fulton County", Region.WEST);
+        Address york = new Address(null, "1 Office Park", null, "York", "WA", "90210", "United States",
+                "Fulton County", Region.WEST);
+        Person john = new Person("John", "Smith", ZonedDateTime.of(1985, 6, 1, 12, 0, 0, 0, ZoneId.of("+0")));
+        john.setSalary(new BigDecimal("1000.00"));
+        john.setHomeAddress(leeds);
+        john.addChild(new Person("Johnny", "Smith", ZonedDateTime.of(2012, 6, 1, 12, 0, 0, 0, ZoneId.of("+0"))));
+        john.addChild(new Person("Bobby", "Smith", ZonedDateTime.of(2015, 6, 1, 12, 0, 0, 0, ZoneId.of("+0"))));
+        Person jane = new Person("Jane", "Smith", ZonedDateTime.of(1988, 6, 1, 12, 0, 0, 0, ZoneId.of("+0")));
+        jane.setSalary(new BigDecimal("3000.00"));
+        jane.setHomeAddress(york);
+        jane.addChild(new Person("Sue", "Smith", ZonedDateTime.of(2019, 6, 1, 12, 0, 0, 0, ZoneId.of("+0"))));
+        repo.saveAll(List.of(john, jane));
+
+        SalaryStats salaries = repo.salaryStats();
+        assertThat(salaries.count()).isEqualTo(5);
+        assertThat(salaries.total()).isEqualByComparingTo("4000");
+        assertThat(salaries.average()).isEqualByComparingTo("800");
+        assertThat(salaries.minimum()).isEqualByComparingTo("0");
+        assertThat(salaries.maximum()).isEqualByComparingTo("3000");
+        assertThat(repo.countByHomeRegion()).containsExactly(entry(Region.WEST, 2L));
+        assertThat(repo.countByHomeCity(Region.WEST)).containsExactly(entry("Leeds", 1L), entry("York", 1L));
+        assertThat(repo.countByBirthDecade()).containsExactly(entry(1980, 2L), entry(2010, 3L));
+        assertThat(repo.countChildrenPerParent()).containsExactly(entry(1, 1L), entry(2, 1L));
+    }
+
+    @Test
+    public void canLookUpPeopleInSnapshot() {
+        Person john = new Person("John", "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6")));
+        john.setSalary(new BigDecimal("73000.28"));
+        john.setEmail("john@smith.com");
+        john.setHomeAddress(new Address(null, "123 Birch Street", "Apt 1A", "Leeds", "WA", "90210", "United States",
+                "Fulton County", Region.WEST));
+        john.addChild(new Person("Johnny", "Smith", ZonedDateTime.of(2010, 1, 1, 0, 0, 0, 0, ZoneId.of("+0"))));
+        john.addChild(new Person("Bobby", "Smith", ZonedDateTime.of(2012, 1, 1, 0, 0, 0, 0, ZoneId.of("+0"))));
+        repo.save(john);
+        Person jane = new Person("Jane", "Smith", ZonedDateTime.of(1982, 3, 4, 0, 0, 0, 0, ZoneId.of("+0")));
+        jane.setSpouseId(john.getId());
+        repo.save(jane);
+
+        PeopleSnapshot snapshot = repo.snapshot();
+
+        assertThat(snapshot.size()).isEqualTo(4);
+        Person found = snapshot.findById(john.getId()).get();
+        Person expected = repo.findById(john.getId()).get();
+        assertThat(found).isEqualTo(expected);
+        assertThat(found.getSalary()).isEqualByComparingTo("73000.28");
+        assertThat(found.getEmail()).isEqualTo("john@smith.com");
+        assertThat(found.getHomeAddress()).isEqualTo(expected.getHomeAddress());
+        assertThat(found.getBusinessAddress()).isEmpty();
+        assertThat(found.getChildren()).containsExactlyInAnyOrderElementsOf(expected.getChildren());
+        assertThat(found.hasChanges()).isFalse();
+        assertThat(snapshot.findById(jane.getId()).get().getSpouseId()).contains(john.getId());
+        assertThat(snapshot.findAddressById(john.getHomeAddress().get().id())).isEqualTo(expected.getHomeAddress());
+        assertThat(snapshot.findById(-1L)).isEmpty();
+    }
+
+    @Test
+    public void canMapSnapshotFileAndCatchUp(@TempDir Path directory) throws IOException {
+        Person john = new Person("J\u00f6hn", "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("+0")));
+        john.setSalary(new BigDecimal("73000.28"));
+        john.setEmail("john@smith.com");
+        john.setBusinessAddress(new Address(null, "1 Office Park", null, "Leeds", "WA", "90210", "United States",
+                "Fulton County", Region.NORTHEAST));
+        john.addChild(new Person("Johnny", "Smith", ZonedDateTime.of(2010, 1, 1, 0, 0, 0, 0, ZoneId.of("+0"))));
+        repo.save(john);
+        PeopleSnapshot snapshot = repo.snapshot();
+        Path file = directory.resolve("people.snapshot");
+
+        SnapshotFile.write(snapshot, file);
+        MappedSnapshot mapped = SnapshotFile.open(file);
+
+        assertThat(mapped.size()).isEqualTo(2);
+        assertThat(mapped.maxId()).isEqualTo(snapshot.maxId());
+        Person found = mapped.findById(john.getId()).get();
+        Person expected = snapshot.findById(john.getId()).get();
+        assertThat(found).isEqualTo(expected);
+        assertThat(found.getSalary()).isEqualByComparingTo("73000.28");
+        assertThat(found.getEmail()).isEqualTo("john@smith.com");
+        assertThat(found.getBusinessAddress()).isEqualTo(expected.getBusinessAddress());
+        assertThat(found.getChildren()).containsExactlyElementsOf(expected.getChildren());
+        assertThat(mapped.findById(-1L)).isEmpty();
+
+        Person newer = repo.save(new Person("newer", "123", ZonedDateTime.now()));
+        assertThat(repo.findAll(mapped.maxId(), 100)).extracting(Person::getId).containsExactly(newer.getId());
+
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[bytes.length - 1]++;
+        Files.write(file, bytes);
+        assertThatThrownBy(() -> SnapshotFile.open(file)).isInstanceOf(IOException.class)
+                .hasMessageContaining("checksum");
+    }
+
+    @Test
+    public void rejectsSnapshotFileWithBadHeader(@TempDir Path directory) throws IOException {
+        repo.save(new Person("John", "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("+0"))));
+        Path file = directory.resolve("people.snapshot");
+        SnapshotFile.write(repo.snapshot(), file);
+        byte[] written = Files.readAllBytes(file);
+
+        ByteBuffer header = ByteBuffer.wrap(written.clone()).order(SnapshotFile.ORDER);
+        header.putInt(8, 1000);
+        Files.write(file, header.array());
+        assertThatThrownBy(() -> SnapshotFile.open(file)).isInstanceOf(IOException.class)
+                .hasMessageContaining("checksum");
+
+        header = ByteBuffer.wrap(written.clone()).order(SnapshotFile.ORDER);
+        header.putInt(8, 1000);
+        header.putLong(SnapshotFile.CHECKSUM_AT, checksum(header));
+        Files.write(file, header.array());
+        assertThatThrownBy(() -> SnapshotFile.open(file)).isInstanceOf(IOException.class)
+                .hasMessageContaining("outside the file");
+
+        header = ByteBuffer.wrap(written.clone()).order(SnapshotFile.ORDER);
+        header.putLong(SnapshotFile.SECTIONS_AT + SnapshotFile.ADDRESS_STRINGS * Long.BYTES, written.length + 8L);
+        header.putLong(SnapshotFile.CHECKSUM_AT, checksum(header));
+        Files.write(file, header.array());
+        assertThatThrownBy(() -> SnapshotFile.open(file)).isInstanceOf(IOException.class)
+                .hasMessageContaining("outside the file");
+    }
+
+    // Signs an edited file the way SnapshotFile does: the columns, then the header without the checksum.
+    private static long checksum(ByteBuffer file) {
+        CRC32C checksum = new CRC32C();
+        checksum.update(file.slice(SnapshotFile.HEADER_BYTES, file.capacity() - SnapshotFile.HEADER_BYTES));
+        checksum.update(file.slice(0, SnapshotFile.CHECKSUM_AT));
+        checksum.update(file.slice(SnapshotFile.SECTIONS_AT, SnapshotFile.HEADER_BYTES - SnapshotFile.SECTIONS_AT));
+        return checksum.getValue();
+    }
+
+    @Test
+    public void failedSnapshotWriteLeavesNoTemporaryFile(@TempDir Path directory) throws IOException {
+        repo.save(new Person("John", "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("+0"))));
+        Path file = directory.resolve("people.snapshot");
+        Files.createDirectories(file.resolve("in-the-way"));
+
+        assertThatThrownBy(() -> SnapshotFile.write(repo.snapshot(), file)).isInstanceOf(IOException.class);
+        assertThat(directory.resolve("people.snapshot.tmp")).doesNotExist();
+    }
+
     @Test
     public void canUpdate() {
         Person savedPerson = repo.save(new Person("test", "123", ZonedDateTime.now()));
@@ -222,4 +460,634 @@ public class PeopleRepositoryTest {
 
         assertThat(p2.getSalary()).isNotEqualByComparingTo(p1.getSalary());
     }
+
+    @Test
+    public void updateWritesChangedFieldsOnly() {
+        Person savedPerson = repo.save(new Person("test", "123", ZonedDateTime.now()));
+        Person loaded = repo.findById(savedPerson.getId()).get();
+        RepositoryMetrics metrics = new RepositoryMetrics();
+        repo.setListener(metrics);
+
+        repo.update(loaded);
+        assertThat(metrics.stats(CrudOperation.UPDATE).count()).isZero();
+
+        savedPerson.setEmail("test@example.com");
+        savedPerson.setBusinessAddress(new Address(null,"1 Office Park", null, "Leeds", "WA", "90210",
+                "United States", "Fulton County", Region.WEST));
+        loaded.setFirstName("changed");
+        repo.update(savedPerson);
+        repo.update(loaded);
+        assertThat(metrics.stats(CrudOperation.UPDATE).count()).isEqualTo(2);
+
+        Person found = repo.findById(savedPerson.getId()).get();
+        assertThat(found.getFirstName()).isEqualTo("changed");
+        assertThat(found.getBusinessAddress().get().streetAddress()).isEqualTo("1 Office Park");
+        assertThat(found.hasChanges()).isFalse();
+    }
+
+    @Test
+    public void updatingDetachedPersonKeepsUnsetColumns() {
+        Person john = new Person("John", "Smith", ZonedDateTime.now());
+        john.setEmail("john@example.com");
+        john.setHomeAddress(new Address(null, "123 Birch Street", null, "Leeds", "WA", "90210", "United States",
+                "Fulton County", Region.WEST));
+        john.setBusinessAddress(new Address(null, "1 Office Park", null, "Leeds", "WA", "90210", "United States",
+                "Fulton County", Region.WEST));
+        Person jane = repo.save(new Person("Jane", "Smith", ZonedDateTime.now()));
+        john.setSpouseId(jane.getId());
+        repo.save(john);
+
+        Person detached = new Person("Johnny", "Smith", john.getDob());
+        detached.setId(john.getId());
+        detached.setSalary(new BigDecimal("1000"));
+        repo.update(detached);
+
+        Person found = repo.findById(john.getId()).get();
+        assertThat(found.getFirstName()).isEqualTo("Johnny");
+        assertThat(found.getSalary()).isEqualByComparingTo("1000");
+        assertThat(found.getEmail()).isEqualTo("john@example.com");
+        assertThat(found.getHomeAddress().get().streetAddress()).isEqualTo("123 Birch Street");
+        assertThat(found.getBusinessAddress().get().streetAddress()).isEqualTo("1 Office Park");
+        assertThat(found.getSpouseId()).contains(jane.getId());
+    }
+
+    @Test
+    public void canUpdateAllInBatches() {
+        List<Person> people = repo.saveAll(IntStream.range(0, 5)
+                .mapToObj(i -> new Person("test" + i, "123", ZonedDateTime.now()))
+                .toList());
+        people.forEach(p -> p.setSalary(new BigDecimal("1000")));
+        people.get(0).setLastName("changed");
+
+        repo.updateAll(people, 2);
+
+        assertThat(people).noneMatch(Person::hasChanges);
+        assertThat(repo.findByIds(people.stream().map(Person::getId).toList()).values())
+                .allSatisfy(p -> assertThat(p.getSalary()).isEqualByComparingTo("1000"));
+        assertThat(repo.findById(people.get(0).getId()).get().getLastName()).isEqualTo("changed");
+    }
+
+    @Test
+    public void canSaveAllPeopleInBatches() {
+        List<Person> people = IntStream.range(0, 5)
+                .mapToObj(i -> new Person("test" + i, "123", ZonedDateTime.now()))
+                .toList();
+        long startCount = repo.count();
+        List<Person> savedPeople = repo.saveAll(people, 2);
+        assertThat(repo.count()).isEqualTo(startCount + 5);
+        assertThat(savedPeople.stream().map(Person::getId).distinct()).hasSize(5);
+        assertThat(repo.findById(savedPeople.get(4).getId()).get().getFirstName()).isEqualTo("test4");
+    }
+
+    @Test
+    public void canSaveAllPeopleWithAddresses() {
+        Address address = new Address(null,"123 Birch Street", "Apt 1A", "Leeds", "WA", "90210", "United States",
+                "Fulton County", Region.WEST);
+        Person john = new Person("John", "Smith", ZonedDateTime.of(1980, 11,
+                15, 0, 0, 0, 0, ZoneId.of("-6")));
+        john.setHomeAddress(address);
+        Person bobby = new Person("Bobby", "Smith", ZonedDateTime.of(1980, 11,
+                15, 0, 0, 0, 0, ZoneId.of("-8")));
+        bobby.setHomeAddress(address);
+        bobby.setBusinessAddress(new Address(null,"1 Office Park", null, "Leeds", "WA", "90210", "United States",
+                "Fulton County", Region.WEST));
+
+        repo.saveAll(List.of(john, bobby));
+
+        Person foundBobby = repo.findById(bobby.getId()).get();
+        assertThat(foundBobby.getHomeAddress().get().id()).isEqualTo(address.id());
+        assertThat(foundBobby.getBusinessAddress().get().streetAddress()).isEqualTo("1 Office Park");
+    }
+
+    @Test
+    public void doesNotResaveAddressWithId() throws SQLException {
+        Address office = new Address(null,"1 Office Park", null, "Leeds", "WA", "90210", "United States",
+                "Fulton County", Region.WEST);
+        Person john = new Person("John", "Smith", ZonedDateTime.now());
+        john.setBusinessAddress(office);
+        repo.save(john);
+        long addressCount = countAddresses();
+
+        Person bobby = new Person("Bobby", "Smith", ZonedDateTime.now());
+        bobby.setBusinessAddress(office);
+        repo.save(bobby);
+
+        assertThat(countAddresses()).isEqualTo(addressCount);
+        assertThat(repo.findById(bobby.getId()).get().getBusinessAddress().get().id()).isEqualTo(office.id());
+    }
+
+    @Test
+    public void canDeduplicateAddressesByContent() throws SQLException {
+        repo.getAddressRepository().enableDeduplication();
+        Person john = new Person("John", "Smith", ZonedDateTime.now());
+        john.setBusinessAddress(new Address(null,"1 Office Park", null, "Leeds", "WA", "90210", "United States",
+                "Fulton County", Region.WEST));
+        repo.save(john);
+        long addressCount = countAddresses();
+
+        Person bobby = new Person("Bobby", "Smith", ZonedDateTime.now());
+        bobby.setBusinessAddress(new Address(null,"1  office park ", null, "LEEDS", "WA", "90210", "United States",
+                "Fulton County", Region.WEST));
+        Person tommy = new Person("Tommy", "Smith", ZonedDateTime.now());
+        tommy.setBusinessAddress(new Address(null,"1 Office Park", null, "Leeds", "WA", "90210", "United States",
+                "Fulton County", Region.WEST));
+        tommy.setHomeAddress(new Address(null,"123 Birch Street", "Apt 1A", "Leeds", "WA", "90210", "United States",
+                "Fulton County", Region.WEST));
+        repo.saveAll(List.of(bobby, tommy));
+
+        Long officeId = john.getBusinessAddress().get().id();
+        assertThat(bobby.getBusinessAddress().get().id()).isEqualTo(officeId);
+        assertThat(tommy.getBusinessAddress().get().id()).isEqualTo(officeId);
+        assertThat(countAddresses()).isEqualTo(addressCount + 1);
+    }
+
+    private long countAddresses() throws SQLException {
+        try (var stmt = connection.createStatement();
+             var rs = stmt.executeQuery("SELECT COUNT(*) FROM ADDRESSES")) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    @Test
+    public void deduplicationForgetsRolledBackAndDeletedAddresses() throws SQLException {
+        AddressRepository addresses = repo.getAddressRepository();
+        addresses.enableDeduplication();
+        Person john = new Person("John", "Smith", ZonedDateTime.now());
+        john.setHomeAddress(new Address(null, "1 Office Park", null, "Leeds", "WA", "90210", "United States",
+                "Fulton County", Region.WEST));
+        repo.save(john);
+        connection.rollback();
+
+        Person bobby = new Person("Bobby", "Smith", ZonedDateTime.now());
+        bobby.setHomeAddress(new Address(null, "1 Office Park", null, "Leeds", "WA", "90210", "United States",
+                "Fulton County", Region.WEST));
+        repo.save(bobby);
+        assertThat(repo.findById(bobby.getId()).get().getHomeAddress()).contains(bobby.getHomeAddress().get());
+
+        connection.setAutoCommit(true);
+        Person tommy = new Person("Tommy", "Smith", ZonedDateTime.now());
+        tommy.setHomeAddress(new Address(null, "123 Birch Street", null, "Leeds", "WA", "90210", "United States",
+                "Fulton County", Region.WEST));
+        repo.save(tommy);
+        repo.delete(tommy);
+        addresses.delete(tommy.getHomeAddress().get());
+
+        Person sam = new Person("Sam", "Smith", ZonedDateTime.now());
+        sam.setHomeAddress(new Address(null, "123 Birch Street", null, "Leeds", "WA", "90210", "United States",
+                "Fulton County", Region.WEST));
+        repo.save(sam);
+        assertThat(sam.getHomeAddress().get().id()).isNotEqualTo(tommy.getHomeAddress().get().id());
+        assertThat(repo.findById(sam.getId()).get().getHomeAddress()).contains(sam.getHomeAddress().get());
+    }
+
+    @Test
+    public void cascadeDeleteForgetsDeduplicatedAddresses() throws SQLException {
+        repo.getAddressRepository().enableDeduplication();
+        repo.setDeleteMode(DeleteMode.CASCADE);
+        connection.setAutoCommit(true);
+        Person john = new Person("John", "Smith", ZonedDateTime.now());
+        john.setHomeAddress(new Address(null, "1 Office Park", null, "Leeds", "WA", "90210", "United States",
+                "Fulton County", Region.WEST));
+        repo.save(john);
+        repo.delete(john);
+
+        Person bobby = new Person("Bobby", "Smith", ZonedDateTime.now());
+        bobby.setHomeAddress(new Address(null, "1 Office Park", null, "Leeds", "WA", "90210", "United States",
+                "Fulton County", Region.WEST));
+        repo.save(bobby);
+        assertThat(repo.findById(bobby.getId()).get().getHomeAddress()).contains(bobby.getHomeAddress().get());
+    }
+
+    @Test
+    public void canSaveTreeBreadthFirst() {
+        Person root = new Person("root", "Smith", ZonedDateTime.now());
+        for (int i = 0; i < 3; i++) {
+            Person child = new Person("child" + i, "Smith", ZonedDateTime.now());
+            root.addChild(child);
+            for (int j = 0; j < 2; j++) {
+                child.addChild(new Person("grandchild" + i + j, "Smith", ZonedDateTime.now()));
+            }
+        }
+        Person single = new Person("single", "Jones", ZonedDateTime.now());
+
+        List<GenerationStats> generations = repo.saveTree(List.of(root, single));
+
+        assertThat(generations).extracting(GenerationStats::size).containsExactly(2, 3, 6);
+        assertThat(generations).extracting(GenerationStats::generation).containsExactly(0, 1, 2);
+        Person grandchild = root.getChildren().iterator().next().getChildren().iterator().next();
+        Person parent = grandchild.getParent().get();
+        assertThat(repo.findById(parent.getId()).get().getChildren())
+                .extracting(Person::getId).contains(grandchild.getId());
+        assertThat(repo.findById(root.getId()).get().getChildren()).hasSize(3);
+    }
+
+    @Test
+    public void canCommitUnitOfWork() {
+        Person existing = repo.save(new Person("existing", "123", ZonedDateTime.now()));
+        Person doomed = repo.save(new Person("doomed", "123", ZonedDateTime.now()));
+        Person john = new Person("John", "Smith", ZonedDateTime.now());
+        john.setHomeAddress(new Address(null,"123 Birch Street", "Apt 1A", "Leeds", "WA", "90210", "United States",
+                "Fulton County", Region.WEST));
+        john.setBusinessAddress(new Address(null,"1 Office Park", null, "Leeds", "WA", "90210", "United States",
+                "Fulton County", Region.WEST));
+        john.addChild(new Person("Johnny", "Smith", ZonedDateTime.now()));
+        john.addChild(new Person("Bobby", "Smith", ZonedDateTime.now()));
+
+        UnitOfWork unitOfWork = new UnitOfWork(repo);
+        unitOfWork.save(john);
+        existing.setSalary(new BigDecimal("5000"));
+        unitOfWork.update(existing);
+        unitOfWork.delete(doomed);
+        unitOfWork.commit();
+
+        assertThat(unitOfWork.isEmpty()).isTrue();
+        Person foundJohn = repo.findById(john.getId()).get();
+        assertThat(foundJohn.getChildren()).extracting(Person::getFirstName).containsOnly("Johnny", "Bobby");
+        assertThat(foundJohn.getBusinessAddress().get().streetAddress()).isEqualTo("1 Office Park");
+        assertThat(repo.findById(existing.getId()).get().getSalary()).isEqualByComparingTo("5000");
+        assertThat(repo.findById(doomed.getId())).isEmpty();
+    }
+
+    @Test
+    public void rollsBackUnitOfWorkOnFailure() throws SQLException {
+        Person parent = new Person("parent", "123", ZonedDateTime.now());
+        parent.addChild(new Person("child", "123", ZonedDateTime.now()));
+        repo.save(parent);
+        long count = repo.count();
+
+        UnitOfWork unitOfWork = new UnitOfWork(repo);
+        unitOfWork.save(new Person("new", "123", ZonedDateTime.now()));
+        unitOfWork.delete(parent);
+
+        assertThatThrownBy(unitOfWork::commit).isInstanceOf(RuntimeException.class);
+        assertThat(repo.count()).isEqualTo(count);
+        assertThat(connection.getAutoCommit()).isFalse();
+        connection.rollback();
+        assertThat(repo.findById(parent.getId())).isEmpty();
+    }
+
+    @Test
+    public void unitOfWorkJoinsOpenTransaction() throws SQLException {
+        Person doomed = repo.save(new Person("doomed", "123", ZonedDateTime.now()));
+        connection.commit();
+
+        UnitOfWork unitOfWork = new UnitOfWork(repo);
+        Person john = new Person("John", "Smith", ZonedDateTime.now());
+        unitOfWork.save(john);
+        unitOfWork.delete(doomed);
+        unitOfWork.commit();
+        assertThat(repo.findById(john.getId())).isPresent();
+        assertThat(repo.findById(doomed.getId())).isEmpty();
+
+        connection.rollback();
+        assertThat(repo.findById(john.getId())).isEmpty();
+        assertThat(repo.findById(doomed.getId())).isPresent();
+
+        connection.setAutoCommit(true);
+        unitOfWork.delete(doomed);
+        unitOfWork.commit();
+        assertThat(connection.getAutoCommit()).isTrue();
+        connection.setAutoCommit(false);
+        connection.rollback();
+        assertThat(repo.findById(doomed.getId())).isEmpty();
+    }
+
+    @Test
+    public void unitOfWorkDeletesChildrenBeforeStoredParents() {
+        Person parent = new Person("parent", "123", ZonedDateTime.now());
+        parent.addChild(new Person("child", "123", ZonedDateTime.now()));
+        repo.save(parent);
+        Person child = parent.getChildren().iterator().next();
+        // Loaded separately, so neither knows the other in memory.
+        Person loadedParent = repo.findById(parent.getId()).get();
+        Person loadedChild = repo.findById(child.getId()).get();
+        assertThat(loadedChild.getParent()).isEmpty();
+
+        UnitOfWork unitOfWork = new UnitOfWork(repo);
+        unitOfWork.delete(loadedParent);
+        unitOfWork.delete(loadedChild);
+        unitOfWork.delete(new Person("unsaved", "123", ZonedDateTime.now()));
+        unitOfWork.commit();
+
+        assertThat(repo.findById(parent.getId())).isEmpty();
+        assertThat(repo.findById(child.getId())).isEmpty();
+    }
+
+    @Test
+    public void canStreamAllPeople() {
+        Person john = new Person("John", "Smith", ZonedDateTime.of(1980, 11,
+                15, 0, 0, 0, 0, ZoneId.of("-6")));
+        john.setHomeAddress(new Address(null,"123 Birch Street", "Apt 1A", "Leeds", "WA", "90210", "United States",
+                "Fulton County", Region.WEST));
+        repo.saveAll(List.of(john, new Person("test", "123", ZonedDateTime.now())));
+
+        repo.setFetchSize(1);
+        try (Stream<Person> people = repo.findAll()) {
+            List<Person> foundPeople = people.toList();
+            assertThat(foundPeople).hasSize((int) repo.count());
+            assertThat(foundPeople).filteredOn(p -> p.getId().equals(john.getId()))
+                    .singleElement()
+                    .satisfies(p -> assertThat(p.getHomeAddress().get().city()).isEqualTo("Leeds"));
+        }
+    }
+
+    @Test
+    public void canFindAllByPage() {
+        List<Person> savedPeople = repo.saveAll(IntStream.range(0, 5)
+                .mapToObj(i -> new Person("test" + i, "123", ZonedDateTime.now()))
+                .toList());
+        long afterId = savedPeople.get(0).getId();
+
+        List<Person> page = repo.findAll(afterId, 3);
+
+        assertThat(page).extracting(Person::getFirstName).containsExactly("test1", "test2", "test3");
+        assertThat(repo.findAll(page.get(2).getId(), 3)).extracting(Person::getFirstName).containsExactly("test4");
+    }
+
+    @Test
+    public void canFindPeopleWithFinders() {
+        Address leeds = new Address(null,"123 Birch Street", "Apt 1A", "Leeds", "WA", "90210", "United States",
+                "Fulton County", Region.WEST);
+        Person john = new Person("John", "Smith", ZonedDateTime.now());
+        john.setEmail("john@example.com");
+        john.setHomeAddress(leeds);
+        Person jane = new Person("Jane", "Smithers", ZonedDateTime.now());
+        jane.setHomeAddress(new Address(null,"1 Office Park", null, "York", "WA", "90210", "United States",
+                "Fulton County", Region.WEST));
+        Person other = new Person("Other", "Smi_th", ZonedDateTime.now());
+        repo.saveAll(List.of(john, jane, other));
+
+        try (Stream<Person> byEmail = repo.findByEmail("john@example.com");
+             Stream<Person> byPrefix = repo.findByLastNameStartingWith("Smith");
+             Stream<Person> byLiteralPrefix = repo.findByLastNameStartingWith("Smi_");
+             Stream<Person> byRegion = repo.findByHomeRegion(Region.WEST);
+             Stream<Person> byCity = repo.findByHomeCity(Region.WEST, "Leeds")) {
+            assertThat(byEmail).extracting(Person::getId).containsExactly(john.getId());
+            assertThat(byPrefix).extracting(Person::getFirstName).containsExactlyInAnyOrder("John", "Jane");
+            assertThat(byLiteralPrefix).extracting(Person::getFirstName).containsExactly("Other");
+            assertThat(byRegion).extracting(Person::getFirstName).containsExactlyInAnyOrder("John", "Jane");
+            assertThat(byCity).singleElement()
+                    .satisfies(p -> assertThat(p.getHomeAddress().get().city()).isEqualTo("Leeds"));
+        }
+    }
+
+    @Test
+    public void canFindPeopleByIds() {
+        Person john = new Person("John", "Smith", ZonedDateTime.of(1980, 11,
+                15, 0, 0, 0, 0, ZoneId.of("-6")));
+        john.addChild(new Person("Johnny", "Smith", ZonedDateTime.of(2000, 11,
+                15, 0, 0, 0, 0, ZoneId.of("-6"))));
+        john.addChild(new Person("Bobby", "Smith", ZonedDateTime.of(2000, 11,
+                15, 0, 0, 0, 0, ZoneId.of("-6"))));
+        john.setHomeAddress(new Address(null,"123 Birch Street", "Apt 1A", "Leeds", "WA", "90210", "United States",
+                "Fulton County", Region.WEST));
+        Person savedJohn = repo.save(john);
+        Person savedTest = repo.save(new Person("test", "123", ZonedDateTime.now()));
+
+        Map<Long, Person> foundPeople = repo.findByIds(List.of(savedJohn.getId(), savedTest.getId(), -1L));
+
+        assertThat(foundPeople).containsOnlyKeys(savedJohn.getId(), savedTest.getId());
+        Person foundJohn = foundPeople.get(savedJohn.getId());
+        assertThat(foundJohn.getChildren()).extracting(Person::getFirstName).containsOnly("Johnny", "Bobby");
+        assertThat(foundJohn.getHomeAddress().get().city()).isEqualTo("Leeds");
+        assertThat(foundPeople.get(savedTest.getId()).getChildren()).isEmpty();
+    }
+
+    @Test
+    public void canFindPersonWithChildrenFetchedSeparately() {
+        Person john = new Person("John", "Smith", ZonedDateTime.of(1980, 11,
+                15, 0, 0, 0, 0, ZoneId.of("-6")));
+        john.addChild(new Person("Johnny", "Smith", ZonedDateTime.of(2000, 11,
+                15, 0, 0, 0, 0, ZoneId.of("-6"))));
+        john.addChild(new Person("Bobby", "Smith", ZonedDateTime.of(2000, 11,
+                15, 0, 0, 0, 0, ZoneId.of("-6"))));
+        john.setBusinessAddress(new Address(null,"123 Birch Street", "Apt 1A", "Leeds", "WA", "90210", "United States",
+                "Fulton County", Region.WEST));
+        Person savedJohn = repo.save(john);
+        Person savedTest = repo.save(new Person("test", "123", ZonedDateTime.now()));
+        repo.setFetchStrategy(FetchStrategy.SEPARATE_CHILDREN);
+
+        Person foundJohn = repo.findById(savedJohn.getId()).get();
+        assertThat(foundJohn.getChildren()).extracting(Person::getFirstName).containsOnly("Johnny", "Bobby");
+        assertThat(foundJohn.getBusinessAddress().get().city()).isEqualTo("Leeds");
+
+        Map<Long, Person> foundPeople = repo.findByIds(List.of(savedJohn.getId(), savedTest.getId()));
+        assertThat(foundPeople.get(savedJohn.getId()).getChildren()).hasSize(2);
+        assertThat(foundPeople.get(savedTest.getId()).getChildren()).isEmpty();
+    }
+
+    @Test
+    public void canLoadChildrenForPage() {
+        Person john = new Person("John", "Smith", ZonedDateTime.of(1980, 11,
+                15, 0, 0, 0, 0, ZoneId.of("-6")));
+        john.addChild(new Person("Johnny", "Smith", ZonedDateTime.of(2000, 11,
+                15, 0, 0, 0, 0, ZoneId.of("-6"))));
+        Person savedJohn = repo.save(john);
+
+        List<Person> page = repo.findAll(savedJohn.getId() - 1, 10);
+        assertThat(page.get(0).getChildren()).isEmpty();
+        repo.loadChildren(page);
+        assertThat(page.get(0).getChildren()).extracting(Person::getFirstName).containsExactly("Johnny");
+    }
+
+    @Test
+    public void canCacheFoundPeople() {
+        repo.setCache(new EntityCache<>(100, Duration.ofMinutes(5)));
+        Person savedPerson = new Person("test", "123", ZonedDateTime.now());
+        savedPerson.addChild(new Person("child", "123", ZonedDateTime.now()));
+        repo.save(savedPerson);
+
+        Person first = repo.findById(savedPerson.getId()).get();
+        first.setFirstName("changed");
+        first.getChildren().iterator().next().setSalary(new BigDecimal("1000"));
+        Person second = repo.findById(savedPerson.getId()).get();
+        Person third = repo.findByIds(List.of(savedPerson.getId())).get(savedPerson.getId());
+
+        assertThat(second).isNotSameAs(first).isNotSameAs(third).isEqualTo(third);
+        assertThat(second.getFirstName()).isEqualTo("test");
+        assertThat(second.hasChanges()).isFalse();
+        assertThat(second.getChildren().iterator().next().getSalary()).isEqualByComparingTo("0");
+        assertThat(repo.getCache().stats().hits()).isEqualTo(2);
+        assertThat(repo.getCache().stats().misses()).isEqualTo(1);
+    }
+
+    @Test
+    public void updateEvictsCachedPerson() {
+        repo.setCache(new EntityCache<>(100, Duration.ofMinutes(5)));
+        Person savedPerson = repo.save(new Person("test", "123", ZonedDateTime.now()));
+        repo.findById(savedPerson.getId());
+
+        savedPerson.setSalary(new BigDecimal("73000.23"));
+        repo.update(savedPerson);
+
+        assertThat(repo.findById(savedPerson.getId()).get().getSalary()).isEqualByComparingTo("73000.23");
+    }
+
+    @Test
+    public void savingChildEvictsCachedParent() {
+        repo.setCache(new EntityCache<>(100, Duration.ofMinutes(5)));
+        Person john = repo.save(new Person("John", "Smith", ZonedDateTime.of(1980, 11,
+                15, 0, 0, 0, 0, ZoneId.of("-6"))));
+        repo.findById(john.getId());
+
+        Person johnny = new Person("Johnny", "Smith", ZonedDateTime.of(2000, 11,
+                15, 0, 0, 0, 0, ZoneId.of("-6")));
+        john.addChild(johnny);
+        repo.save(johnny);
+
+        assertThat(repo.findById(john.getId()).get().getChildren()).extracting(Person::getFirstName)
+                .containsExactly("Johnny");
+    }
+
+    @Test
+    public void canSaveWithSmallStatementCache() {
+        try (PeopleRepository small = new PeopleRepository(connection, 1)) {
+            Person john = new Person("John", "Smith", ZonedDateTime.of(1980, 11, 15, 0, 0, 0, 0, ZoneId.of("+0")));
+            john.setHomeAddress(new Address(null, "123 Birch Street", null, "Leeds", "WA", "90210",
+                    "United States", null, Region.WEST));
+            john.addChild(new Person("Johnny", "Smith", ZonedDateTime.of(2000, 1, 1, 0, 0, 0, 0, ZoneId.of("+0"))));
+
+            small.save(john);
+
+            assertThat(small.findById(john.getId()).get().getHomeAddress()).contains(john.getHomeAddress().get());
+            assertThat(small.count()).isEqualTo(2);
+        }
+    }
+
+    @Test
+    public void updatingLoadedChildEvictsCachedParent() {
+        repo.setCache(new EntityCache<>(100, Duration.ofMinutes(5)));
+        Person john = new Person("John", "Smith", ZonedDateTime.of(1980, 11, 15, 0, 0, 0, 0, ZoneId.of("+0")));
+        john.addChild(new Person("Johnny", "Smith", ZonedDateTime.of(2000, 11, 15, 0, 0, 0, 0, ZoneId.of("+0"))));
+        repo.save(john);
+        Long johnnyId = john.getChildren().iterator().next().getId();
+        repo.findById(john.getId());
+
+        Person johnny = repo.findAll(john.getId(), 1).get(0);
+        johnny.setFirstName("Jonathan");
+        repo.update(johnny);
+
+        assertThat(repo.findById(john.getId()).get().getChildren()).extracting(Person::getId, Person::getFirstName)
+                .containsExactly(tuple(johnnyId, "Jonathan"));
+    }
+
+    @Test
+    public void cachedPeopleShareAddresses() {
+        repo.setCache(new EntityCache<>(100, Duration.ofMinutes(5)));
+        Address address = new Address(null,"123 Birch Street", "Apt 1A", "Leeds", "WA", "90210", "United States",
+                "Fulton County", Region.WEST);
+        Person john = new Person("John", "Smith", ZonedDateTime.of(1980, 11,
+                15, 0, 0, 0, 0, ZoneId.of("-6")));
+        john.setHomeAddress(address);
+        Person bobby = new Person("Bobby", "Smith", ZonedDateTime.of(1980, 11,
+                15, 0, 0, 0, 0, ZoneId.of("-8")));
+        bobby.setHomeAddress(address);
+        repo.saveAll(List.of(john, bobby));
+
+        Address johnsAddress = repo.findById(john.getId()).get().getHomeAddress().get();
+        Address bobbysAddress = repo.findById(bobby.getId()).get().getHomeAddress().get();
+
+        assertThat(bobbysAddress).isSameAs(johnsAddress);
+    }
+
+    @Test
+    public void canShareRepositoryAcrossThreadsWithConnectionPool() throws Exception {
+        try (ConnectionPool pool = new ConnectionPool(() -> DriverManager.getConnection(DATABASE_URL),
+                PoolConfig.defaults().withMaximumSize(4))) {
+            PeopleRepository pooledRepo = new PeopleRepository(pool);
+            long startCount = pooledRepo.count();
+            ExecutorService executor = Executors.newFixedThreadPool(8);
+            List<Future<Long>> savedIds = new ArrayList<>();
+            for (int i = 0; i < 40; i++) {
+                String name = "test" + i;
+                savedIds.add(executor.submit(() -> {
+                    Person saved = pooledRepo.save(new Person(name, "123", ZonedDateTime.now()));
+                    assertThat(pooledRepo.findById(saved.getId()).get().getFirstName()).isEqualTo(name);
+                    return saved.getId();
+                }));
+            }
+            for (Future<Long> savedId : savedIds) {
+                savedId.get();
+            }
+            executor.shutdown();
+
+            assertThat(pooledRepo.count()).isEqualTo(startCount + 40);
+            assertThat(pool.metrics().total()).isLessThanOrEqualTo(4);
+        }
+    }
+
+    @Test
+    public void streamClosedOnAnotherThreadReleasesItsConnection() throws Exception {
+        try (ConnectionPool pool = new ConnectionPool(() -> DriverManager.getConnection(DATABASE_URL),
+                PoolConfig.defaults().withMaximumSize(2))) {
+            PeopleRepository pooledRepo = new PeopleRepository(pool);
+            Stream<Person> people = pooledRepo.findAll();
+            CompletableFuture.runAsync(people::close).join();
+            assertThat(pool.metrics().active()).isZero();
+
+            ExecutorService other = Executors.newSingleThreadExecutor();
+            try {
+                // Another thread takes the released connection and keeps it.
+                other.submit(pool::borrow).get();
+                Person saved = pooledRepo.save(new Person("test", "123", ZonedDateTime.now()));
+                assertThat(saved.getId()).isNotNull();
+                assertThat(pool.metrics().active()).isEqualTo(1);
+                assertThat(pool.metrics().total()).isEqualTo(2);
+            } finally {
+                other.shutdown();
+            }
+        }
+    }
+
+    @Test
+    public void canSaveAndFindAsynchronously() {
+        try (ConnectionPool pool = new ConnectionPool(() -> DriverManager.getConnection(DATABASE_URL),
+                PoolConfig.defaults().withMaximumSize(4));
+             AsyncPeopleRepository asyncRepo = new AsyncPeopleRepository(pool)) {
+            long startCount = asyncRepo.count().join();
+            List<CompletableFuture<Person>> saves = IntStream.range(0, 100)
+                    .mapToObj(i -> asyncRepo.save(new Person("test" + i, "123", ZonedDateTime.now())))
+                    .toList();
+
+            List<CompletableFuture<Optional<Person>>> finds = saves.stream()
+                    .map(save -> save.thenCompose(saved -> asyncRepo.findById(saved.getId())))
+                    .toList();
+
+            assertThat(finds).allSatisfy(find -> assertThat(find.join()).isPresent());
+            assertThat(asyncRepo.count().join()).isEqualTo(startCount + 100);
+        }
+    }
+
+    @Test
+    public void reportsOperationsToListener() {
+        RepositoryMetrics metrics = new RepositoryMetrics();
+        repo.setListener(metrics);
+
+        repo.saveAll(List.of(new Person("test", "123", ZonedDateTime.now()),
+                new Person("test", "123", ZonedDateTime.now())));
+        Person savedPerson = repo.save(new Person("test", "123", ZonedDateTime.now()));
+        repo.findById(savedPerson.getId());
+        repo.delete(savedPerson);
+
+        assertThat(metrics.stats(CrudOperation.SAVE).count()).isEqualTo(2);
+        assertThat(metrics.stats(CrudOperation.SAVE).rowsAffected()).isEqualTo(3);
+        assertThat(metrics.stats(CrudOperation.FIND_BY_ID).count()).isEqualTo(1);
+        assertThat(metrics.stats(CrudOperation.FIND_BY_ID).executeNanos()).isPositive();
+        assertThat(metrics.stats(CrudOperation.DELETE_ONE).rowsAffected()).isEqualTo(1);
+        assertThat(metrics.stats(CrudOperation.UPDATE).count()).isZero();
+    }
+
+    @Test
+    public void reportsFailuresToListener() {
+        RepositoryMetrics metrics = new RepositoryMetrics();
+        repo.setListener(metrics);
+        Person child = new Person("Johnny", "Smith", ZonedDateTime.now());
+        Person unsavedParent = new Person("John", "Smith", ZonedDateTime.now());
+        unsavedParent.setId(-1L);
+        child.setParent(unsavedParent);
+
+        assertThatThrownBy(() -> repo.save(child)).isInstanceOf(UnableToSaveException.class);
+        assertThat(metrics.stats(CrudOperation.SAVE).errors()).isEqualTo(1);
+    }
 }
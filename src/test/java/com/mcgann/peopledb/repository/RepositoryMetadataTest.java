@@ -0,0 +1,52 @@
+package com.mcgann.peopledb.repository;
+
+import com.mcgann.peopledb.model.Address;
+import com.mcgann.peopledb.model.CrudOperation;
+import com.mcgann.peopledb.model.Person;
+import com.mcgann.peopledb.model.Region;
+import org.junit.jupiter.api.Test;
+
+import java.time.ZonedDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RepositoryMetadataTest {
+
+    @Test
+    public void readsSqlFromAnnotations() {
+        RepositoryMetadata metadata = RepositoryMetadata.of(PeopleRepository.class);
+        assertThat(metadata.sql(CrudOperation.SAVE)).isEqualTo(PeopleRepository.SAVE_PERSON_SQL);
+        assertThat(metadata.sql(CrudOperation.FIND_ALL)).isEqualTo(PeopleRepository.FIND_ALL_SQL);
+        assertThat(metadata.sql(CrudOperation.FIND_PAGE)).isEqualTo(PeopleRepository.FIND_PAGE_SQL);
+    }
+
+    @Test
+    public void returnsNullForUndeclaredSql() {
+        assertThat(RepositoryMetadata.of(PeopleRepository.class).sql(CrudOperation.COUNT)).isNull();
+    }
+
+    @Test
+    public void isSharedPerRepositoryClass() {
+        assertThat(RepositoryMetadata.of(PeopleRepository.class)).isSameAs(RepositoryMetadata.of(PeopleRepository.class));
+        assertThat(RepositoryMetadata.of(PeopleRepository.class)).isNotSameAs(RepositoryMetadata.of(AddressRepository.class));
+    }
+
+    @Test
+    public void canGetAndSetPersonId() {
+        RepositoryMetadata metadata = RepositoryMetadata.of(PeopleRepository.class);
+        Person person = new Person("test", "123", ZonedDateTime.now());
+        assertThat(metadata.getId(person)).isNull();
+        metadata.setId(person, 42L);
+        assertThat(person.getId()).isEqualTo(42L);
+        assertThat(metadata.getId(person)).isEqualTo(42L);
+    }
+
+    @Test
+    public void canSetFinalAddressId() {
+        RepositoryMetadata metadata = RepositoryMetadata.of(AddressRepository.class);
+        Address address = new Address(null, "123 Birch Street", "Apt 1A", "Leeds", "WA", "90210", "United States",
+                "Fulton County", Region.WEST);
+        metadata.setId(address, 7L);
+        assertThat(address.id()).isEqualTo(7L);
+    }
+}
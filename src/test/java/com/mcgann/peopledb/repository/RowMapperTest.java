@@ -0,0 +1,78 @@
+package com.mcgann.peopledb.repository;
+
+import com.mcgann.peopledb.model.Address;
+import com.mcgann.peopledb.model.Person;
+import com.mcgann.peopledb.model.Region;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RowMapperTest {
+
+    private Connection connection;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        connection = DriverManager.getConnection("jdbc:h2:mem:");
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        connection.close();
+    }
+
+    @Test
+    public void mapsPrefixedColumnsByIndex() throws SQLException {
+        PersonRowMapper people = new PersonRowMapper("P_");
+        AddressRowMapper addresses = new AddressRowMapper("A_");
+        String sql = """
+                SELECT 'ignored' AS OTHER, 7 AS P_ID, 'John' AS P_FIRST_NAME, 'Smith' AS P_LAST_NAME,
+                TIMESTAMP '1980-11-15 06:00:00' AS P_DOB, 1000.50 AS P_SALARY,
+                'john@example.com' AS P_EMAIL,
+                3 AS A_ID, '1 Office Park' AS A_STREET_ADDRESS, NULL AS A_ADDRESS2, 'Leeds' AS A_CITY,
+                'WA' AS A_STATE, '90210' AS A_POSTCODE, 'Fulton County' AS A_COUNTY, 'West' AS A_REGION,
+                'United States' AS A_COUNTRY""";
+        try (Statement stmt = connection.createStatement()) {
+            for (int execution = 0; execution < 2; execution++) {
+                try (ResultSet rs = stmt.executeQuery(sql)) {
+                    rs.next();
+                    Person person = people.map(rs);
+                    assertThat(person.getId()).isEqualTo(7L);
+                    assertThat(person.getFirstName()).isEqualTo("John");
+                    assertThat(person.getSalary()).isEqualByComparingTo(new BigDecimal("1000.50"));
+                    assertThat(person.getEmail()).isEqualTo("john@example.com");
+                    Address address = addresses.map(rs);
+                    assertThat(address.id()).isEqualTo(3L);
+                    assertThat(address.city()).isEqualTo("Leeds");
+                    assertThat(address.region()).isEqualTo(Region.WEST);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void returnsNullForNullId() throws SQLException {
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT CAST(NULL AS BIGINT) AS ID, NULL AS FIRST_NAME," +
+                     " NULL AS LAST_NAME, NULL AS DOB, NULL AS SALARY, NULL AS EMAIL")) {
+            rs.next();
+            assertThat(new PersonRowMapper("").map(rs)).isNull();
+        }
+    }
+
+    @Test
+    public void resolvesRegionIgnoringCase() {
+        assertThat(AddressRowMapper.region("northEast")).isEqualTo(Region.NORTHEAST);
+        assertThatThrownBy(() -> AddressRowMapper.region("nowhere")).isInstanceOf(IllegalArgumentException.class);
+    }
+}
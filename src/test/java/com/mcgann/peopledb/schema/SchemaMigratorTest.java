@@ -0,0 +1,62 @@
+package com.mcgann.peopledb.schema;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SchemaMigratorTest {
+
+    private Connection connection;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        connection = DriverManager.getConnection("jdbc:h2:mem:");
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        connection.close();
+    }
+
+    @Test
+    public void appliesPendingMigrationsOnce() throws SQLException {
+        SchemaMigrator migrator = new SchemaMigrator(connection);
+        assertThat(migrator.migrate()).isEqualTo(SchemaMigrator.MIGRATIONS.size());
+        assertThat(migrator.currentVersion()).isEqualTo(migrator.latestVersion());
+        assertThat(migrator.migrate()).isZero();
+    }
+
+    @Test
+    public void indexesJoinColumns() throws SQLException {
+        new SchemaMigrator(connection).migrate();
+        List<String> indexes = new ArrayList<>();
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery(
+                     "SELECT INDEX_NAME FROM INFORMATION_SCHEMA.INDEXES WHERE TABLE_NAME = 'PEOPLE'")) {
+            while (rs.next()) indexes.add(rs.getString(1));
+        }
+        assertThat(indexes).contains("PEOPLE_PARENT_ID_IX", "PEOPLE_HOME_ADDRESS_IX", "PEOPLE_BUSINESS_ADDRESS_IX",
+                "PEOPLE_SPOUSE_IX");
+    }
+
+    @Test
+    public void leavesFailedMigrationPending() throws SQLException {
+        SchemaMigrator migrator = new SchemaMigrator(connection, List.of(
+                new Migration(1, "Good", "CREATE TABLE IF NOT EXISTS GOOD (ID INT)"),
+                new Migration(2, "Bad", "CREATE TABLE NOT VALID SQL")));
+        assertThatThrownBy(migrator::migrate).hasMessageContaining("migrate");
+        assertThat(migrator.currentVersion()).isEqualTo(1);
+        assertThat(connection.getAutoCommit()).isTrue();
+    }
+}